@@ -0,0 +1,110 @@
+package com.example.bloodsystem.bench;
+
+import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.util.HlaUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试用的合成数据：HLA Group / HPA 基因型按大致的人群频率分布生成，HLA 书写格式混合
+ */
+public class SyntheticData {
+
+    private static final int[] A_GROUPS = { 2, 2, 2, 11, 11, 24, 24, 33, 1, 3, 26, 29, 30, 31, 32, 68 };
+    private static final int[] B_GROUPS = { 46, 40, 40, 13, 15, 15, 51, 58, 35, 44, 7, 8, 52, 54, 57, 27 };
+    private static final int[] C_GROUPS = { 1, 1, 3, 3, 7, 7, 8, 12, 14, 15, 4, 6, 2, 5, 16, 17 };
+    private static final int[] DR_GROUPS = { 9, 9, 15, 15, 12, 4, 4, 8, 11, 14, 7, 13, 1, 3, 16, 10 };
+    private static final int[] DQ_GROUPS = { 3, 3, 3, 6, 6, 5, 5, 4, 2, 2 };
+    private static final String[] BLOOD_TYPES = { "A", "B", "O", "O", "AB", "A", "B", "未知" };
+    private static final String[] HPA_LOCI = { "HPA-1", "HPA-2", "HPA-3", "HPA-4", "HPA-5", "HPA-6", "HPA-10", "HPA-15", "HPA-21" };
+
+    private final Random random;
+
+    public SyntheticData(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public Donor donor(int n) {
+        Donor d = new Donor();
+        d.setDonorId(String.format("D%08d", n));
+        d.setName("供者" + n);
+        d.setBloodType(BLOOD_TYPES[random.nextInt(BLOOD_TYPES.length)]);
+        d.setHpa1(hpa()); d.setHpa2(hpa()); d.setHpa3(hpa());
+        d.setHpa4(hpa()); d.setHpa5(hpa()); d.setHpa6(hpa());
+        d.setHpa10(hpa()); d.setHpa15(hpa()); d.setHpa21(hpa());
+        d.setHlaA1(hla("A", A_GROUPS)); d.setHlaA2(hla("A", A_GROUPS));
+        d.setHlaB1(hla("B", B_GROUPS)); d.setHlaB2(hla("B", B_GROUPS));
+        d.setHlaC1(hla("C", C_GROUPS)); d.setHlaC2(hla("C", C_GROUPS));
+        d.setHlaDr1(hla("DRB1", DR_GROUPS)); d.setHlaDr2(hla("DRB1", DR_GROUPS));
+        d.setHlaDq1(hla("DQB1", DQ_GROUPS)); d.setHlaDq2(hla("DQB1", DQ_GROUPS));
+        HlaUtils.fillSplitFields(d);
+        return d;
+    }
+
+    public List<Donor> donors(int from, int count) {
+        List<Donor> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) list.add(donor(from + i));
+        return list;
+    }
+
+    /**
+     * 与 Excel 导入模板一致的一行 TSV：姓名 ID HPA-1~21 HLA-A1 A2 B1 B2 C1 C2 DR1 DR2 DQ1 DQ2
+     */
+    public String tsvLine(int n) {
+        Donor d = donor(n);
+        return String.join("\t", d.getName(), d.getDonorId(),
+                nz(d.getHpa1()), nz(d.getHpa2()), nz(d.getHpa3()), nz(d.getHpa4()), nz(d.getHpa5()),
+                nz(d.getHpa6()), nz(d.getHpa10()), nz(d.getHpa15()), nz(d.getHpa21()),
+                nz(d.getHlaA1()), nz(d.getHlaA2()), nz(d.getHlaB1()), nz(d.getHlaB2()),
+                nz(d.getHlaC1()), nz(d.getHlaC2()), nz(d.getHlaDr1()), nz(d.getHlaDr2()),
+                nz(d.getHlaDq1()), nz(d.getHlaDq2()));
+    }
+
+    /**
+     * 常见的 HLA 书写格式混合 (含空值与全角冒号)
+     */
+    public String hlaText() {
+        return random.nextBoolean() ? hla("A", A_GROUPS) : hla("B", B_GROUPS);
+    }
+
+    /**
+     * 患者抗体文本：1~6 个抗原，逗号、顿号、换行混合分隔
+     */
+    public String antibodyText() {
+        StringBuilder sb = new StringBuilder();
+        int n = 1 + random.nextInt(6);
+        String[] seps = { ", ", "，", "\n", " " };
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(seps[random.nextInt(seps.length)]);
+            sb.append(random.nextBoolean() ? "A" + A_GROUPS[random.nextInt(A_GROUPS.length)] : "B*" + B_GROUPS[random.nextInt(B_GROUPS.length)]);
+        }
+        return sb.toString();
+    }
+
+    public static String[] hpaLoci() { return HPA_LOCI.clone(); }
+
+    private String hpa() {
+        int r = random.nextInt(100);
+        if (r < 5) return null;
+        if (r < 75) return "aa";
+        if (r < 95) return "ab";
+        return "bb";
+    }
+
+    private String hla(String locus, int[] groups) {
+        int g = groups[random.nextInt(groups.length)];
+        int s = 1 + random.nextInt(12);
+        switch (random.nextInt(6)) {
+            case 0: return String.format("HLA-%s*%02d:%02d", locus, g, s);
+            case 1: return String.format("%s*%02d:%02d", locus, g, s);
+            case 2: return String.format("%02d:%02d", g, s);
+            case 3: return String.format("%s*%02d", locus, g);
+            case 4: return String.format("%s*%02d：%02d", locus, g, s);
+            default: return random.nextInt(10) == 0 ? null : String.format("%02d", g);
+        }
+    }
+
+    private static String nz(String s) { return s == null ? "-" : s; }
+}
@@ -0,0 +1,98 @@
+package com.example.bloodsystem.controller;
+
+import com.example.bloodsystem.bench.SyntheticData;
+import com.example.bloodsystem.config.MatchConfig;
+import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.service.DonorService.MatchResult;
+import com.example.bloodsystem.util.HlaLocus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * "显示全部" 配型响应的序列化开销 (不含配型本身)：
+ * - entity：默认格式，ObjectMapper 直接序列化 MatchResult 列表 (含完整 Donor 实体)
+ * - compact / compactGzip：format=compact 的紧凑格式 (CompactMatchWriter)，以及再经 gzip 压缩
+ * 每次调用写出 results 条结果 (位点分布近似真实配型)，返回输出字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class MatchResponseBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int results;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<MatchResult> list;
+    private CompactMatchWriter writer;
+
+    @Setup
+    public void setup() {
+        SyntheticData data = new SyntheticData(1);
+        List<String> hpaLoci = new MatchConfig().getAllHpas();
+        Random random = new Random(1);
+        list = new ArrayList<>(results);
+        for (Donor d : data.donors(0, results)) {
+            MatchResult mr = new MatchResult(d);
+            mr.score = 400 - random.nextInt(400);
+            mr.rate = mr.score / 4.15;
+            mr.grade = mr.score >= 300 ? "A" : mr.score >= 200 ? "B" : "C";
+            for (HlaLocus locus : HlaLocus.values()) {
+                int r = random.nextInt(3);
+                if (r == 0) {
+                    mr.matchedLoci.add(locus.label());
+                    mr.highlightedAlleles.add(HlaLocus.key(locus.allele(0)));
+                } else if (r == 1) {
+                    mr.compatibleLoci.add(locus.label());
+                }
+            }
+            for (String locus : hpaLoci) {
+                int r = random.nextInt(4);
+                if (r == 0) mr.matchedLoci.add(locus);
+                else if (r == 1) mr.compatibleLoci.add(locus);
+                else if (r == 2) mr.mismatchedLoci.add(locus);
+                else mr.unknownLoci.add(locus);
+            }
+            list.add(mr);
+        }
+        writer = new CompactMatchWriter(null, hpaLoci);
+    }
+
+    @Benchmark
+    public int entity() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        objectMapper.writeValue(out, list);
+        return out.size();
+    }
+
+    @Benchmark
+    public int compact() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompactMatchWriter.Row row = writer.begin(objectMapper.getFactory(), out);
+        for (MatchResult mr : list) row.write(mr);
+        row.finish();
+        return out.size();
+    }
+
+    @Benchmark
+    public int compactGzip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = CompactMatchWriter.gzip(out);
+        CompactMatchWriter.Row row = writer.begin(objectMapper.getFactory(), gzip);
+        for (MatchResult mr : list) row.write(mr);
+        row.finish();
+        gzip.finish();
+        return out.size();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.bench.SyntheticData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImportService.parseLine 的逐行解析吞吐 (ops/s = 行/秒)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportParseBenchmark {
+
+    private static final int LINES = 10000;
+
+    private ImportService importService;
+    private String[] lines;
+
+    @Setup
+    public void setup() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MatchMetrics metrics = new MatchMetrics();
+        ReflectionTestUtils.setField(metrics, "registry", registry);
+        metrics.init();
+        importService = new ImportService();
+        ReflectionTestUtils.setField(importService, "meterRegistry", registry);
+        ReflectionTestUtils.setField(importService, "matchMetrics", metrics);
+        ReflectionTestUtils.setField(importService, "writeMode", "jdbc-insert");
+        importService.initMetrics();
+        SyntheticData data = new SyntheticData(7);
+        lines = new String[LINES];
+        for (int i = 0; i < LINES; i++) lines[i] = data.tsvLine(i);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void parseLine(Blackhole bh) {
+        for (String line : lines) bh.consume(importService.parseLine(line));
+    }
+}
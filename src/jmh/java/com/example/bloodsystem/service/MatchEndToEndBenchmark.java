@@ -0,0 +1,82 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.BloodsystemApplication;
+import com.example.bloodsystem.bench.SyntheticData;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端 DonorService.matchDonors：嵌入式 H2 (MySQL 兼容模式) + 完整 Spring 上下文
+ * mode=index 走内存索引，mode=sql 关闭索引走数据库扫描 (含 SQL 预筛选)；结果缓存关闭
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class MatchEndToEndBenchmark {
+
+    @Param({ "10000", "100000" })
+    public int donors;
+
+    @Param({ "index", "sql" })
+    public String mode;
+
+    private ConfigurableApplicationContext context;
+    private DonorService donorService;
+    private Map<String, String> pGts;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        // 以命令行参数传入，优先级高于 application.properties
+        context = new SpringApplicationBuilder(BloodsystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--match.index.enabled=" + mode.equals("index"),
+                        "--match.cache.enabled=false",
+                        "--logging.level.root=WARN");
+        donorService = context.getBean(DonorService.class);
+        DonorIndex donorIndex = context.getBean(DonorIndex.class);
+
+        SyntheticData data = new SyntheticData(3);
+        for (int from = 0; from < donors; from += 5000) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = from; i < Math.min(from + 5000, donors); i++) sb.append(data.tsvLine(i)).append('\n');
+            donorService.importFromText(sb.toString());
+        }
+        if (mode.equals("index")) {
+            while (!donorIndex.isReady()) Thread.sleep(50);
+        }
+
+        pGts = new HashMap<>();
+        pGts.put("HLA-A1", "A*02:01");
+        pGts.put("HLA-A2", "A*24:02");
+        pGts.put("HLA-B1", "B*46:01");
+        pGts.put("HLA-B2", "B*51:01");
+        for (String locus : SyntheticData.hpaLoci()) pGts.put(locus, "aa");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<DonorService.MatchResult> matchTop50() {
+        return donorService.matchDonors(null, pGts, "A*11, B*13", true);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.bench.SyntheticData;
+import com.example.bloodsystem.config.MatchConfig;
+import com.example.bloodsystem.entity.Donor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配型打分热路径：
+ * - scoreAll：对整个索引逐个供者计算总分 (MatchPlan.score，含 HLA 交叉匹配、抗体、HPA)
+ * - rankTop50 / rankTop50Parallel：打分 + 有界堆选出前 50 (顺序 / ForkJoin 并行)
+ * - buildDetails：为最终结果生成完整匹配详情 (DonorService.calculateScore)
+ * storage 对比索引的堆内数组与堆外内存映射两种列存储
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class ScoringBenchmark {
+
+    private static final int DETAIL_SAMPLE = 1000;
+
+    @Param({ "10000", "100000", "1000000" })
+    public int donors;
+
+    @Param({ "heap", "mapped" })
+    public String storage;
+
+    // HLA 配型分辨率：group / allele (两种模式逐供者查表的开销应当相同)
+    @Param({ "group", "allele" })
+    public String resolution;
+
+    private DonorIndex index;
+    private MatchPlan plan;
+    private MatchRanker sequentialRanker;
+    private MatchRanker parallelRanker;
+    private DonorService donorService;
+    private List<Donor> detailSample;
+
+    @Setup
+    public void setup() throws IOException {
+        MatchConfig matchConfig = new MatchConfig();
+        index = new DonorIndex();
+        ReflectionTestUtils.setField(index, "matchConfig", matchConfig);
+        ReflectionTestUtils.setField(index, "enabled", true);
+        ReflectionTestUtils.setField(index, "storage", storage);
+        ReflectionTestUtils.setField(index, "storagePath", Files.createTempDirectory("donor-columns").toString());
+        index.init();
+        SyntheticData data = new SyntheticData(1);
+        for (int from = 0; from < donors; from += 10000) {
+            index.onDonorChange(DonorChangeEvent.inserted(data.donors(from, Math.min(10000, donors - from))));
+        }
+
+        Map<String, String> pGts = new HashMap<>();
+        pGts.put("HLA-A1", "A*02:01");
+        pGts.put("HLA-A2", "A*24:02");
+        pGts.put("HLA-B1", "B*46:01");
+        pGts.put("HLA-B2", "B*51:01");
+        pGts.put("HLA-C1", "C*01:02");
+        pGts.put("HLA-C2", "C*07:02");
+        pGts.put("HLA-DR1", "DRB1*09:01");
+        pGts.put("HLA-DR2", "DRB1*15:01");
+        pGts.put("HLA-DQ1", "DQB1*03:01");
+        pGts.put("HLA-DQ2", "DQB1*06:02");
+        for (String locus : SyntheticData.hpaLoci()) pGts.put(locus, "aa");
+        plan = MatchPlan.compile(null, pGts, "A*11, B*13", matchConfig, "allele".equals(resolution));
+
+        sequentialRanker = ranker(1, Integer.MAX_VALUE);
+        parallelRanker = ranker(0, 0);
+
+        donorService = new DonorService();
+        ReflectionTestUtils.setField(donorService, "matchConfig", matchConfig);
+        detailSample = data.donors(0, DETAIL_SAMPLE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        index.shutdown();
+        sequentialRanker.shutdown();
+        parallelRanker.shutdown();
+    }
+
+    private static MatchRanker ranker(int parallelism, int threshold) {
+        MatchRanker r = new MatchRanker();
+        ReflectionTestUtils.setField(r, "parallelism", parallelism);
+        ReflectionTestUtils.setField(r, "parallelThreshold", threshold);
+        r.init();
+        return r;
+    }
+
+    @Benchmark
+    public long scoreAll() {
+        return index.read(idx -> {
+            long sum = 0;
+            for (int slot = 0; slot < idx.capacity(); slot++) {
+                if (idx.isLive(slot)) sum += plan.score(idx, slot);
+            }
+            return sum;
+        });
+    }
+
+    @Benchmark
+    public int[] rankTop50() {
+        return index.read(idx -> sequentialRanker.rank(idx.capacity(), idx::isLive, slot -> plan.score(idx, slot), 50));
+    }
+
+    @Benchmark
+    public int[] rankTop50Parallel() {
+        return index.read(idx -> parallelRanker.rank(idx.capacity(), idx::isLive, slot -> plan.score(idx, slot), 50));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DETAIL_SAMPLE)
+    public void buildDetails(Blackhole bh) {
+        for (Donor d : detailSample) bh.consume(donorService.calculateScore(d, plan));
+    }
+}
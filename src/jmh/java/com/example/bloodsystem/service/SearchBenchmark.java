@@ -0,0 +1,53 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.bench.SyntheticData;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 关键词搜索 (DonorSearchIndex.search，第一页 16 条 + 总数)：
+ * - idFragment：ID 片段，命中少
+ * - chineseName：中文姓名片段，命中约千分之一
+ * - chineseChar：中文单字，命中全部 (最坏情况)
+ * 随供者数增长的延迟变化对比 LIKE '%kw%' 的全表扫描。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class SearchBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    public int donors;
+
+    private DonorSearchIndex index;
+
+    @Setup
+    public void setup() {
+        index = new DonorSearchIndex();
+        SyntheticData data = new SyntheticData(1);
+        for (int from = 0; from < donors; from += 10000) {
+            index.onDonorChange(DonorChangeEvent.inserted(data.donors(from, Math.min(10000, donors - from))));
+        }
+        ReflectionTestUtils.setField(index, "ready", true);
+    }
+
+    @Benchmark
+    public DonorSearchIndex.Page idFragment() {
+        return index.search("D00123", null, null, 16);
+    }
+
+    @Benchmark
+    public DonorSearchIndex.Page chineseName() {
+        return index.search("供者123", null, null, 16);
+    }
+
+    @Benchmark
+    public DonorSearchIndex.Page chineseChar() {
+        return index.search("供", null, null, 16);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.bloodsystem.util;
+
+import com.example.bloodsystem.bench.SyntheticData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HlaUtils.parseHla / parseAntibodies 在混合书写格式输入上的吞吐 (每次调用解析 1024 个输入)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HlaParseBenchmark {
+
+    private static final int INPUTS = 1024;
+
+    private String[] hlaInputs;
+    private String[] antibodyInputs;
+
+    @Setup
+    public void setup() {
+        SyntheticData data = new SyntheticData(42);
+        hlaInputs = new String[INPUTS];
+        antibodyInputs = new String[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            hlaInputs[i] = data.hlaText();
+            antibodyInputs[i] = data.antibodyText();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void parseHla(Blackhole bh) {
+        for (String s : hlaInputs) bh.consume(HlaUtils.parseHla(s));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void parseAntibodies(Blackhole bh) {
+        for (String s : antibodyInputs) bh.consume(HlaUtils.parseAntibodies(s));
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.bloodsystem.loadtest;
+
+import com.example.bloodsystem.config.VirtualThreads;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配型接口负载测试：模拟 N 个医生同时反复提交配型查询 (闭环：每个客户端收到响应后立即发下一个请求)
+ * 需先启动应用 (对比时分别以 spring.threads.virtual.enabled=true / false 启动)，再运行：
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--url http://localhost:8080 --clients 300 --seconds 60"
+ * 参数：
+ * --url        应用地址 (默认 http://localhost:8080)
+ * --clients    并发客户端数 (默认 200)
+ * --seconds    统计时长 (默认 60)，之前另有 --warmup 秒预热 (默认 10，不计入结果)
+ * --all-ratio  "显示全部" 查询 (limitResult=false) 的比例 (默认 0.05)，其余为 Top-N 查询
+ * --user / --password  登录账号 (默认 admin / 123456)
+ * 输出两类查询各自的吞吐量、延迟分位数 (毫秒) 和失败数。
+ */
+public class MatchLoadTest {
+
+    private static final int[] A_GROUPS = { 2, 2, 2, 11, 11, 24, 24, 33, 1, 3, 26, 29, 30, 31, 32, 68 };
+    private static final int[] B_GROUPS = { 46, 40, 40, 13, 15, 15, 51, 58, 35, 44, 7, 8, 52, 54, 57, 27 };
+    private static final int[] DR_GROUPS = { 9, 9, 15, 15, 12, 4, 4, 8, 11, 14, 7, 13, 1, 3, 16, 10 };
+    private static final String[] HPA = { "aa", "aa", "aa", "ab", "bb" };
+
+    private static final String TOP = "top", ALL = "all";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = parseArgs(args);
+        String url = opts.getOrDefault("url", "http://localhost:8080");
+        int clients = Integer.parseInt(opts.getOrDefault("clients", "200"));
+        int seconds = Integer.parseInt(opts.getOrDefault("seconds", "60"));
+        int warmup = Integer.parseInt(opts.getOrDefault("warmup", "10"));
+        double allRatio = Double.parseDouble(opts.getOrDefault("all-ratio", "0.05"));
+
+        HttpClient http = HttpClient.newBuilder()
+                .cookieHandler(new CookieManager())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        login(http, url, opts.getOrDefault("user", "admin"), opts.getOrDefault("password", "123456"));
+
+        // 客户端线程只负责等待响应，JDK 21 上用虚拟线程，否则每个客户端一个平台线程
+        ExecutorService pool = VirtualThreads.isSupported()
+                ? VirtualThreads.newPerTaskExecutor("loadtest-")
+                : Executors.newFixedThreadPool(clients);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+        List<Stats> all = Collections.synchronizedList(new ArrayList<>());
+        System.out.printf("%d 个客户端，预热 %d 秒，统计 %d 秒 ...%n", clients, warmup, seconds);
+
+        for (int c = 0; c < clients; c++) {
+            long seed = c;
+            pool.execute(() -> {
+                Random random = new Random(seed);
+                Map<String, Stats> mine = Map.of(TOP, new Stats(TOP), ALL, new Stats(ALL));
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    String kind = random.nextDouble() < allRatio ? ALL : TOP;
+                    boolean ok;
+                    try {
+                        HttpResponse<InputStream> resp = http.send(matchRequest(url, random, kind), HttpResponse.BodyHandlers.ofInputStream());
+                        try (InputStream body = resp.body()) {
+                            body.transferTo(OutputStream.nullOutputStream()); // 计时包含完整传输
+                        }
+                        ok = resp.statusCode() == 200;
+                    } catch (Exception e) {
+                        ok = false;
+                    }
+                    long done = System.nanoTime();
+                    if (now >= measureFrom && done <= end) mine.get(kind).add(done - now, ok);
+                }
+                all.addAll(mine.values());
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(warmup + seconds + 600, TimeUnit.SECONDS);
+
+        System.out.printf("%-5s %8s %10s %9s %9s %9s %9s %7s%n", "查询", "请求数", "吞吐(次/秒)", "p50", "p95", "p99", "max", "失败");
+        for (String kind : List.of(TOP, ALL)) {
+            Stats merged = new Stats(kind);
+            for (Stats s : all) if (s.kind.equals(kind)) merged.merge(s);
+            merged.print(seconds);
+        }
+    }
+
+    private static void login(HttpClient http, String url, String user, String password) throws Exception {
+        HttpResponse<Void> resp = http.send(HttpRequest.newBuilder(URI.create(url + "/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form(Map.of("username", user, "password", password))))
+                .build(), HttpResponse.BodyHandlers.discarding());
+        String location = resp.headers().firstValue("Location").orElse("");
+        if (location.contains("error")) throw new IllegalStateException("登录失败: " + user);
+    }
+
+    // 随机患者：A、B、DRB1 各两条链，约一半带 HPA，少数带排除抗体
+    private static HttpRequest matchRequest(String url, Random random, String kind) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("hlaA1", "A*" + pick(random, A_GROUPS));
+        params.put("hlaA2", "A*" + pick(random, A_GROUPS));
+        params.put("hlaB1", "B*" + pick(random, B_GROUPS));
+        params.put("hlaB2", "B*" + pick(random, B_GROUPS));
+        params.put("hlaDr1", "DRB1*" + pick(random, DR_GROUPS));
+        params.put("hlaDr2", "DRB1*" + pick(random, DR_GROUPS));
+        if (random.nextBoolean()) {
+            params.put("hpa1", HPA[random.nextInt(HPA.length)]);
+            params.put("hpa5", HPA[random.nextInt(HPA.length)]);
+            params.put("hpa15", HPA[random.nextInt(HPA.length)]);
+        }
+        if (random.nextInt(10) == 0) params.put("antibodies", "B*" + pick(random, B_GROUPS));
+        params.put("limitResult", String.valueOf(TOP.equals(kind)));
+        return HttpRequest.newBuilder(URI.create(url + "/api/match"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .timeout(Duration.ofMinutes(5))
+                .POST(HttpRequest.BodyPublishers.ofString(form(params)))
+                .build();
+    }
+
+    private static String pick(Random random, int[] groups) {
+        return String.format("%02d", groups[random.nextInt(groups.length)]);
+    }
+
+    private static String form(Map<String, String> params) {
+        StringJoiner sj = new StringJoiner("&");
+        params.forEach((k, v) -> sj.add(URLEncoder.encode(k, StandardCharsets.UTF_8) + "=" + URLEncoder.encode(v, StandardCharsets.UTF_8)));
+        return sj.toString();
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("参数应为 --名称 值: " + args[i]);
+            opts.put(args[i].substring(2), args[i + 1]);
+        }
+        return opts;
+    }
+
+    // 一类查询的延迟 (纳秒) 与失败数
+    private static final class Stats {
+        final String kind;
+        long[] nanos = new long[1024];
+        int count = 0;
+        int failures = 0;
+
+        Stats(String kind) { this.kind = kind; }
+
+        void add(long elapsed, boolean ok) {
+            if (count == nanos.length) nanos = Arrays.copyOf(nanos, count * 2);
+            nanos[count++] = elapsed;
+            if (!ok) failures++;
+        }
+
+        void merge(Stats other) {
+            for (int i = 0; i < other.count; i++) add(other.nanos[i], true);
+            failures += other.failures;
+        }
+
+        void print(int seconds) {
+            if (count == 0) {
+                System.out.printf("%-5s %8d%n", kind, 0);
+                return;
+            }
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            System.out.printf("%-5s %8d %10.1f %9.1f %9.1f %9.1f %9.1f %7d%n", kind, count, count / (double) seconds,
+                    ms(sorted, 0.50), ms(sorted, 0.95), ms(sorted, 0.99), sorted[count - 1] / 1e6, failures);
+        }
+
+        private static double ms(long[] sorted, double q) {
+            return sorted[Math.min(sorted.length - 1, (int) (sorted.length * q))] / 1e6;
+        }
+    }
+}
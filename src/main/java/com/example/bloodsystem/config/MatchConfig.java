@@ -1,42 +1,154 @@
 package com.example.bloodsystem.config;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 配型配置：HPA 位点、兼容矩阵，以及评分规则 (ScoringRules)
+ * 评分规则默认取 classpath 的 match/scoring.properties；配置了 match.scoring.path 时以该文件覆盖默认值，
+ * 并监视文件变化自动重新加载。每次加载编译出新的只读规则整体替换，正在进行的配型继续使用编译计划时取到的那一版。
+ */
+@Slf4j
 @Configuration
 public class MatchConfig {
 
+    private static final String DEFAULTS = "match/scoring.properties";
+
     private final List<String> allHpas = List.of(
             "HPA-1", "HPA-2", "HPA-3", "HPA-4", "HPA-5", "HPA-6", "HPA-10", "HPA-15", "HPA-21"
     );
 
-    private final Set<String> criticalHpas = Set.of("HPA-1", "HPA-5", "HPA-15");
-
-    private final Map<String, Double> weights = new HashMap<>();
     private final Map<String, Map<String, Integer>> compatMatrix = new HashMap<>();
 
-    public MatchConfig() {
-        // HPA 权重配置 (虽然现在 Service 里写死了+5/+2，但保留此配置结构)
-        allHpas.forEach(h -> weights.put(h, 1.0));
+    // 外部评分文件，为空时只用默认规则
+    @Value("${match.scoring.path:}")
+    private String scoringPath;
+
+    private final Properties defaults;
+    private volatile ScoringRules rules;
+    private int version = 0;
+    private Thread watcher;
 
+    public MatchConfig() {
         // HPA 兼容性矩阵 (0=不匹配, 1=兼容, 2=匹配)
         compatMatrix.put("aa", Map.of("aa", 2, "ab", 1, "bb", 0));
         compatMatrix.put("ab", Map.of("aa", 1, "ab", 2, "bb", 1));
         compatMatrix.put("bb", Map.of("aa", 0, "ab", 1, "bb", 2));
+
+        this.defaults = loadDefaults();
+        this.rules = ScoringRules.compile(defaults, new Properties(), allHpas, ++version);
     }
 
-    public List<String> getAllHpas() { return allHpas; }
-    public Set<String> getCriticalHpas() { return criticalHpas; }
+    @PostConstruct
+    public void init() {
+        if (scoringPath == null || scoringPath.isBlank()) return;
+        Path file = Paths.get(scoringPath).toAbsolutePath();
+        // 启动时文件有误直接失败，避免带着非预期的规则运行
+        if (Files.exists(file)) rules = compile(file);
+        else log.warn("评分规则文件不存在，使用默认规则: {}", file);
+        log.info("评分规则已加载: {} (版本 {})", file, rules.version());
 
-    public double getWeight(String locus) {
-        return weights.getOrDefault(locus, 1.0);
+        watcher = new Thread(() -> watch(file), "match-scoring-watch");
+        watcher.setDaemon(true);
+        watcher.start();
     }
 
+    @PreDestroy
+    public void shutdown() {
+        if (watcher != null) watcher.interrupt();
+    }
+
+    public List<String> getAllHpas() { return allHpas; }
+    public Set<String> getCriticalHpas() { return rules.criticalHpas(); }
+
+    /**
+     * 当前评分规则 (调用方应在一次配型中只取一次，保证前后一致)
+     */
+    public ScoringRules rules() { return rules; }
+
     public int getScore(String pVal, String dVal) {
         if (pVal == null || dVal == null) return 0;
         return compatMatrix.getOrDefault(pVal, Map.of()).getOrDefault(dVal, 0);
     }
-}
\ No newline at end of file
+
+    /**
+     * 重新读取外部评分文件，内容有误时保留当前规则
+     * @return 是否已替换为新规则
+     */
+    public synchronized boolean reload() {
+        if (scoringPath == null || scoringPath.isBlank()) return false;
+        Path file = Paths.get(scoringPath).toAbsolutePath();
+        try {
+            rules = Files.exists(file) ? compile(file) : ScoringRules.compile(defaults, new Properties(), allHpas, ++version);
+            log.info("评分规则已重新加载: {} (版本 {})", file, rules.version());
+            return true;
+        } catch (IllegalStateException e) {
+            log.warn("评分规则文件有误，继续使用版本 {}: {}", rules.version(), e.getMessage());
+            return false;
+        }
+    }
+
+    private synchronized ScoringRules compile(Path file) {
+        Properties p = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            p.load(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException("读取评分规则文件失败: " + e.getMessage(), e);
+        }
+        return ScoringRules.compile(defaults, p, allHpas, ++version);
+    }
+
+    // 监视文件所在目录 (编辑器常以“写临时文件再改名”的方式保存)，目标文件有变化时重新加载
+    private void watch(Path file) {
+        Path dir = file.getParent();
+        try (WatchService ws = dir.getFileSystem().newWatchService()) {
+            dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = ws.take();
+                boolean changed = false;
+                // 一次保存通常触发多个事件，稍等片刻合并处理
+                TimeUnit.MILLISECONDS.sleep(200);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) changed = true;
+                }
+                if (changed) reload();
+                if (!key.reset()) {
+                    log.warn("评分规则文件所在目录已不可访问，停止监视: {}", dir);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("无法监视评分规则文件，修改后需重启生效: {}", e.getMessage());
+        }
+    }
+
+    private static Properties loadDefaults() {
+        Properties p = new Properties();
+        try (InputStream in = MatchConfig.class.getClassLoader().getResourceAsStream(DEFAULTS)) {
+            if (in == null) throw new IllegalStateException("找不到默认评分规则: " + DEFAULTS);
+            p.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("读取默认评分规则失败: " + e.getMessage(), e);
+        }
+        return p;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.bloodsystem.config;
+
+import java.util.*;
+
+/**
+ * 编译后的评分规则 (只读)
+ * 由评分文件 (见 match/scoring.properties) 解析、校验后一次性展开为原始类型表，
+ * 重新加载时整体替换，配型过程中持有的规则不会被修改。
+ */
+public final class ScoringRules {
+
+    /** HPA 兼容结果 (MatchConfig.getScore)：不匹配 / 兼容 / 匹配 */
+    public static final int HPA_MISMATCH = 0, HPA_COMPATIBLE = 1, HPA_MATCH = 2;
+
+    private static final Set<String> KEYS = Set.of(
+            "hla.allele-points", "hla.group-points", "antibody.conflict-penalty",
+            "hpa.match-points", "hpa.compatible-points", "hpa.mismatch-points",
+            "hpa.critical", "hpa.critical-mismatch-penalty", "grade.a", "grade.b", "grade.c");
+    private static final String WEIGHT_PREFIX = "hpa.weight.";
+    private static final int MAX_POINTS = 1_000_000;
+    /** 等级阈值的基准链数：grade.a / b / c 按 4 条链 (A、B 两个位点) 给出 */
+    public static final int GRADE_BASE = 4;
+
+    private final int version;
+    private final int[] levelPoints;    // HLA 相容等级 (HlaAlleleTable.MISMATCH / SAME_GROUP / SAME_ALLELE) -> 每条链得分
+    private final int conflictPenalty;
+    private final int[] hpaPoints;      // [HPA 位点序号 * 3 + 兼容结果] -> 得分 (已乘权重，含关键位点扣分)
+    private final int[] hpaFullPoints;  // [HPA 位点序号] -> 匹配时的得分 (匹配率的分母)
+    private final Set<String> criticalHpas;
+    private final int gradeA, gradeB, gradeC;
+
+    private ScoringRules(int version, int[] levelPoints, int conflictPenalty, int[] hpaPoints, int[] hpaFullPoints,
+                         Set<String> criticalHpas, int gradeA, int gradeB, int gradeC) {
+        this.version = version;
+        this.levelPoints = levelPoints;
+        this.conflictPenalty = conflictPenalty;
+        this.hpaPoints = hpaPoints;
+        this.hpaFullPoints = hpaFullPoints;
+        this.criticalHpas = criticalHpas;
+        this.gradeA = gradeA;
+        this.gradeB = gradeB;
+        this.gradeC = gradeC;
+    }
+
+    /** 规则版本 (每次加载递增)，缓存键据此区分不同规则下的结果 */
+    public int version() { return version; }
+
+    public int levelPoints(int level) { return levelPoints[level]; }
+
+    public int conflictPenalty() { return conflictPenalty; }
+
+    /**
+     * @param locus  HPA 位点序号 (对应 MatchConfig.getAllHpas())
+     * @param compat MatchConfig.getScore 的结果
+     */
+    public int hpaPoints(int locus, int compat) { return hpaPoints[locus * 3 + compat]; }
+
+    public int hpaFullPoints(int locus) { return hpaFullPoints[locus]; }
+
+    public Set<String> criticalHpas() { return criticalHpas; }
+
+    /**
+     * 按完全匹配的 HLA 链数占患者已输入链数的比例定级，阈值按 GRADE_BASE 条链折算
+     * (患者只输入 A、B 位点时即按匹配条数本身；输入 10 条时 A 级要求 10 条全部匹配)
+     */
+    public String grade(int matchCount, int enteredCount) {
+        if (enteredCount <= 0) return "D";
+        long scaled = (long) matchCount * GRADE_BASE;
+        if (scaled >= (long) gradeA * enteredCount) return "A";
+        if (scaled >= (long) gradeB * enteredCount) return "B";
+        if (scaled >= (long) gradeC * enteredCount) return "C";
+        return "D";
+    }
+
+    /**
+     * 解析评分文件 (未写的项取 defaults)，校验失败抛出 IllegalStateException
+     */
+    static ScoringRules compile(Properties defaults, Properties file, List<String> allHpas, int version) {
+        Properties p = new Properties();
+        p.putAll(defaults);
+        p.putAll(file);
+        for (String key : p.stringPropertyNames()) {
+            if (KEYS.contains(key)) continue;
+            if (key.startsWith(WEIGHT_PREFIX) && allHpas.contains(key.substring(WEIGHT_PREFIX.length()))) continue;
+            throw new IllegalStateException("评分规则中有未知的配置项: " + key);
+        }
+
+        int alleleLevel = points(p, "hla.allele-points");
+        int groupLevel = points(p, "hla.group-points");
+        int[] levelPoints = { 0, groupLevel, alleleLevel, 0 };
+        int conflictPenalty = points(p, "antibody.conflict-penalty");
+
+        Set<String> critical = new LinkedHashSet<>();
+        for (String locus : p.getProperty("hpa.critical", "").split("[,\\s]+")) {
+            if (locus.isEmpty()) continue;
+            if (!allHpas.contains(locus)) throw new IllegalStateException("评分规则 hpa.critical 中有未知的 HPA 位点: " + locus);
+            critical.add(locus);
+        }
+        int criticalPenalty = points(p, "hpa.critical-mismatch-penalty");
+
+        int[] base = new int[3];
+        base[HPA_MISMATCH] = points(p, "hpa.mismatch-points");
+        base[HPA_COMPATIBLE] = points(p, "hpa.compatible-points");
+        base[HPA_MATCH] = points(p, "hpa.match-points");
+        int[] hpaPoints = new int[allHpas.size() * 3];
+        int[] hpaFullPoints = new int[allHpas.size()];
+        for (int i = 0; i < allHpas.size(); i++) {
+            String locus = allHpas.get(i);
+            double weight = weight(p, WEIGHT_PREFIX + locus);
+            for (int compat = 0; compat < 3; compat++) {
+                hpaPoints[i * 3 + compat] = (int) Math.round(base[compat] * weight);
+            }
+            if (critical.contains(locus)) hpaPoints[i * 3 + HPA_MISMATCH] -= criticalPenalty;
+            hpaFullPoints[i] = hpaPoints[i * 3 + HPA_MATCH];
+        }
+
+        int gradeA = points(p, "grade.a"), gradeB = points(p, "grade.b"), gradeC = points(p, "grade.c");
+        if (!(GRADE_BASE >= gradeA && gradeA >= gradeB && gradeB >= gradeC && gradeC >= 1)) {
+            throw new IllegalStateException("评分规则的等级阈值应满足 4 >= grade.a >= grade.b >= grade.c >= 1");
+        }
+        return new ScoringRules(version, levelPoints, conflictPenalty, hpaPoints, hpaFullPoints,
+                Collections.unmodifiableSet(critical), gradeA, gradeB, gradeC);
+    }
+
+    private static int points(Properties p, String key) {
+        String raw = p.getProperty(key);
+        if (raw == null) throw new IllegalStateException("评分规则缺少配置项: " + key);
+        try {
+            int v = Integer.parseInt(raw.trim());
+            if (v < 0 || v > MAX_POINTS) throw new IllegalStateException("评分规则 " + key + " 应在 0 ~ " + MAX_POINTS + " 之间: " + raw);
+            return v;
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("评分规则 " + key + " 不是整数: " + raw);
+        }
+    }
+
+    private static double weight(Properties p, String key) {
+        String raw = p.getProperty(key);
+        if (raw == null) return 1.0;
+        try {
+            double v = Double.parseDouble(raw.trim());
+            if (!(v >= 0 && v <= 100)) throw new IllegalStateException("评分规则 " + key + " 应在 0 ~ 100 之间: " + raw);
+            return v;
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("评分规则 " + key + " 不是数字: " + raw);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.bloodsystem.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -9,11 +10,16 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
 
+    // 监控端口 (management.server.port，只监听本机)；未单独配置时为 -1，Prometheus 指标需要登录
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
@@ -21,6 +27,10 @@ public class SecurityConfig {
                 .authorizeHttpRequests((requests) -> requests
                         // 🔥 修改1：把 "/login" 加入放行列表，否则会重定向死循环
                         .requestMatchers("/css/**", "/js/**", "/images/**", "/webjars/**", "/login").permitAll()
+                        // 健康检查免登录；Prometheus 指标只在本机监控端口上免登录，业务端口上访问需要登录 (见 application.properties)
+                        .requestMatchers(AntPathRequestMatcher.antMatcher("/actuator/health")).permitAll()
+                        .requestMatchers(request -> request.getLocalPort() == managementPort
+                                && "/actuator/prometheus".equals(request.getRequestURI())).permitAll()
                         // 其他所有请求都需要登录认证
                         .anyRequest().authenticated()
                 )
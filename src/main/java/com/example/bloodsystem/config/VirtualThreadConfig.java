@@ -0,0 +1,35 @@
+package com.example.bloodsystem.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 虚拟线程模式 (spring.threads.virtual.enabled=true，需要 JDK 21)
+ * Tomcat 请求处理和 MVC 异步响应 (StreamingResponseBody) 改为每个请求一个虚拟线程：
+ * "显示全部" 配型、同步导入等阻塞在 JDBC 上的请求不再占用平台线程，也不再受 Tomcat 线程池 (默认 200) 限制，
+ * 同时访问数据库的请求数由连接池 (spring.datasource.hikari.maximum-pool-size) 决定。
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig implements WebMvcConfigurer {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandler() {
+        // 启动时检查 JDK 版本，不支持时直接失败，避免以为开启了虚拟线程
+        VirtualThreads.requireSupported();
+        log.info("Tomcat 请求处理使用虚拟线程");
+        return handler -> handler.setExecutor(VirtualThreads.newPerTaskExecutor("http-vt-"));
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(VirtualThreads.newPerTaskExecutor("mvc-async-")));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.bloodsystem.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程 (JDK 21) 的创建入口
+ * 项目仍可在 JDK 17 上编译运行，这里通过反射调用 JDK 21 的 API；运行在 JDK 21 以下时 isSupported() 为 false。
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL, NAME, FACTORY, PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null, name = null, factory = null, perTask = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ReflectiveOperationException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        PER_TASK_EXECUTOR = perTask;
+    }
+
+    private VirtualThreads() {}
+
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @throws IllegalStateException 当前 JDK 不支持虚拟线程
+     */
+    public static void requireSupported() {
+        if (!isSupported()) {
+            throw new IllegalStateException("虚拟线程需要 JDK 21 及以上，当前为 " + System.getProperty("java.version"));
+        }
+    }
+
+    /**
+     * 按序号命名 (prefix0、prefix1 ...) 的虚拟线程工厂
+     */
+    public static ThreadFactory factory(String prefix) {
+        requireSupported();
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建虚拟线程工厂失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器 (不排队，并发由任务自身等待的资源决定，例如数据库连接池)
+     */
+    public static ExecutorService newPerTaskExecutor(String prefix) {
+        try {
+            return (ExecutorService) PER_TASK_EXECUTOR.invoke(null, factory(prefix));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建虚拟线程执行器失败: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.bloodsystem.controller;
+
+import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.service.DonorService.MatchResult;
+import com.example.bloodsystem.util.HlaLocus;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 配型结果的紧凑 JSON 格式 (/api/match?format=compact)，用 JsonGenerator 逐条写出，不经过对象序列化：
+ * {"loci": [...], "alleles": [...], "hpa": [...], "fields": [...], "rows": [[...], ...], "count": N}
+ * - 每个结果是一行数组，列顺序见 fields (可用 fields 参数只取部分列)
+ * - matched / compatible / mismatched / unknown 为位掩码：第 i 位对应 loci[i] (HLA 位点在前，HPA 位点在后)
+ * - highlighted 为位掩码：第 i 位对应 alleles[i] (HLA 等位基因字段名)；hla 列按 alleles 顺序给出供者原始 HLA
+ * - hpa 列按 hpa 顺序给出供者 HPA 基因型；conflicts 为抗体冲突原因 (无冲突时为空数组)
+ * - score 为整数分，rate 保留一位小数
+ * 不包含供者的电话、版本号等配型页面用不到的字段。
+ */
+final class CompactMatchWriter {
+
+    enum Field {
+        ID("id"), NAME("name"), BLOOD_TYPE("bloodType"), SCORE("score"), GRADE("grade"), RATE("rate"),
+        MATCHED("matched"), COMPATIBLE("compatible"), MISMATCHED("mismatched"), UNKNOWN("unknown"),
+        HIGHLIGHTED("highlighted"), CONFLICTS("conflicts"), HLA("hla"), HPA("hpa");
+
+        final String key;
+
+        Field(String key) { this.key = key; }
+    }
+
+    private static final Map<String, Field> BY_KEY = new HashMap<>();
+    static {
+        for (Field f : Field.values()) BY_KEY.put(f.key, f);
+    }
+
+    private final Field[] fields;
+    private final List<String> loci = new ArrayList<>();
+    private final Map<String, Integer> lociBits = new HashMap<>();
+    private final Map<String, Integer> alleleBits = new HashMap<>();
+    private final List<String> hpaLoci;
+
+    /**
+     * @param fields 要输出的列 (null 表示全部)
+     * @param hpaLoci 全部 HPA 位点 (MatchConfig.getAllHpas())
+     */
+    CompactMatchWriter(Field[] fields, List<String> hpaLoci) {
+        this.fields = fields == null ? Field.values() : fields;
+        this.hpaLoci = hpaLoci;
+        for (HlaLocus locus : HlaLocus.values()) loci.add(locus.label());
+        loci.addAll(hpaLoci);
+        for (int i = 0; i < loci.size(); i++) lociBits.put(loci.get(i), 1 << i);
+        for (int a = 0; a < HlaLocus.ALLELES; a++) alleleBits.put(HlaLocus.key(a), 1 << a);
+    }
+
+    /**
+     * 解析 fields 参数 (逗号分隔)，为空时返回 null (全部列)
+     * @throws IllegalArgumentException 有未知的列名
+     */
+    static Field[] parseFields(String text) {
+        if (text == null || text.isBlank()) return null;
+        Set<Field> set = new LinkedHashSet<>();
+        for (String key : text.split(",")) {
+            if (key.isBlank()) continue;
+            Field f = BY_KEY.get(key.trim());
+            if (f == null) throw new IllegalArgumentException("未知的字段: " + key.trim() + "，可选: " + String.join(",", BY_KEY.keySet()));
+            set.add(f);
+        }
+        return set.toArray(new Field[0]);
+    }
+
+    /**
+     * gzip 压缩输出，用最快的压缩级别 (结果行重复度高，最快级别已能压到约 1/6，默认级别的 CPU 开销是序列化本身的数倍)
+     * 写完后需调用 finish()
+     */
+    static GZIPOutputStream gzip(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, 8192) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        };
+    }
+
+    /**
+     * 写出表头并返回逐条写结果的 Row，调用方写完后调用 Row.finish()
+     */
+    Row begin(JsonFactory factory, OutputStream out) throws IOException {
+        JsonGenerator g = factory.createGenerator(out);
+        g.writeStartObject();
+        writeStrings(g, "loci", loci);
+        g.writeArrayFieldStart("alleles");
+        for (int a = 0; a < HlaLocus.ALLELES; a++) g.writeString(HlaLocus.param(a));
+        g.writeEndArray();
+        writeStrings(g, "hpa", hpaLoci);
+        g.writeArrayFieldStart("fields");
+        for (Field f : fields) g.writeString(f.key);
+        g.writeEndArray();
+        g.writeArrayFieldStart("rows");
+        return new Row(g);
+    }
+
+    final class Row {
+        private final JsonGenerator g;
+        private int count = 0;
+
+        private Row(JsonGenerator g) { this.g = g; }
+
+        void write(MatchResult mr) throws IOException {
+            Donor d = mr.donor;
+            g.writeStartArray();
+            for (Field f : fields) {
+                switch (f) {
+                    case ID -> g.writeString(d.getDonorId());
+                    case NAME -> g.writeString(d.getName());
+                    case BLOOD_TYPE -> g.writeString(d.getBloodType());
+                    case SCORE -> g.writeNumber(Math.round(mr.score));
+                    case GRADE -> g.writeString(mr.grade);
+                    case RATE -> g.writeNumber(Math.round(mr.rate * 10) / 10.0);
+                    case MATCHED -> g.writeNumber(mask(mr.matchedLoci, lociBits));
+                    case COMPATIBLE -> g.writeNumber(mask(mr.compatibleLoci, lociBits));
+                    case MISMATCHED -> g.writeNumber(mask(mr.mismatchedLoci, lociBits));
+                    case UNKNOWN -> g.writeNumber(mask(mr.unknownLoci, lociBits));
+                    case HIGHLIGHTED -> g.writeNumber(mask(mr.highlightedAlleles, alleleBits));
+                    case CONFLICTS -> writeStrings(g, null, mr.conflictReasons);
+                    case HLA -> {
+                        g.writeStartArray();
+                        for (int a = 0; a < HlaLocus.ALLELES; a++) g.writeString(d.getHla(a));
+                        g.writeEndArray();
+                    }
+                    case HPA -> {
+                        g.writeStartArray();
+                        for (String locus : hpaLoci) g.writeString(d.getGenotype(locus));
+                        g.writeEndArray();
+                    }
+                }
+            }
+            g.writeEndArray();
+            count++;
+        }
+
+        void finish() throws IOException {
+            g.writeEndArray();
+            g.writeNumberField("count", count);
+            g.writeEndObject();
+            g.flush();
+        }
+    }
+
+    private static int mask(Collection<String> names, Map<String, Integer> bits) {
+        int mask = 0;
+        for (String name : names) mask |= bits.getOrDefault(name, 0);
+        return mask;
+    }
+
+    private static void writeStrings(JsonGenerator g, String name, List<String> values) throws IOException {
+        if (name == null) g.writeStartArray();
+        else g.writeArrayFieldStart(name);
+        for (String v : values) g.writeString(v);
+        g.writeEndArray();
+    }
+}
@@ -1,38 +1,91 @@
 package com.example.bloodsystem.controller;
 
+import com.example.bloodsystem.config.MatchConfig;
 import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.service.BatchMatchRequest;
+import com.example.bloodsystem.service.DonorPurgeService;
 import com.example.bloodsystem.service.DonorService;
+import com.example.bloodsystem.service.DonorSlice;
 import com.example.bloodsystem.service.DonorService.MatchResult;
+import com.example.bloodsystem.service.ImportJob;
+import com.example.bloodsystem.service.ImportJobService;
 import com.example.bloodsystem.service.ImportResult;
+import com.example.bloodsystem.service.MatchCache;
+import com.example.bloodsystem.service.PurgeJob;
+import com.example.bloodsystem.util.HlaLocus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
+@Slf4j
 @Controller
 public class DonorController {
 
     @Autowired
     private DonorService service;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MatchCache matchCache;
+
+    @Autowired
+    private MatchConfig matchConfig;
+
+    @Autowired
+    private ImportJobService importJobService;
+
+    @Autowired
+    private DonorPurgeService purgeService;
+
+    // 批量配型一次最多提交的患者数
+    @Value("${match.batch.max-patients:500}")
+    private int maxBatchPatients;
+
+    // 批量配型每个患者最多返回的条数 (每个患者、每个并行分片各保留一个这么大的 Top-K 堆)
+    @Value("${match.batch.max-limit:500}")
+    private int maxBatchLimit;
+
     @GetMapping("/login")
     public String loginPage() { return "login"; }
 
     @GetMapping("/")
     public String index(Model model,
-                        @RequestParam(defaultValue = "0") int page,
                         @RequestParam(defaultValue = "15") int size,
-                        @RequestParam(required = false) String keyword) {
-        Page<Donor> p = service.getDonors(page, size, keyword);
-        model.addAttribute("donorPage", p);
-        model.addAttribute("donors", p.getContent());
+                        @RequestParam(required = false) String keyword,
+                        @RequestParam(required = false) String after,
+                        @RequestParam(required = false) String before) {
+        DonorSlice slice = service.getDonorSlice(keyword, after, before, Math.max(1, Math.min(size, 200)));
+        model.addAttribute("donorSlice", slice);
+        model.addAttribute("donors", slice.getDonors());
         model.addAttribute("keyword", keyword);
         return "index";
     }
@@ -100,28 +153,141 @@ public class DonorController {
     @PostMapping("/reset")
     public String reset(RedirectAttributes redirectAttributes) {
         try {
-            service.deleteAllDonors();
-            redirectAttributes.addFlashAttribute("successMessage", "数据库已清空");
+            PurgeJob job = service.deleteAllDonors();
+            redirectAttributes.addFlashAttribute("successMessage", "清空任务已开始 (任务 " + job.getId() + ")，稍后刷新页面查看");
         } catch (Exception e) {
             redirectAttributes.addFlashAttribute("errorMessage", e.getMessage());
         }
         return "redirect:/";
     }
 
+    /**
+     * 按条件批量删除 (后台任务)：importBatch = 导入任务 ID，idPrefix = 供者 ID 前缀；
+     * 不带条件时必须显式传 all=true 才会清空全部
+     */
+    @PostMapping("/api/donors/purge")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> apiPurge(@RequestParam(required = false) String importBatch,
+                                                        @RequestParam(required = false) String idPrefix,
+                                                        @RequestParam(defaultValue = "false") boolean all) {
+        DonorPurgeService.Criteria criteria = new DonorPurgeService.Criteria(blankToNull(importBatch), blankToNull(idPrefix));
+        if (criteria.equals(DonorPurgeService.Criteria.all()) && !all) {
+            return ResponseEntity.badRequest().body(Map.of("error", "请指定 importBatch 或 idPrefix，清空全部需传 all=true"));
+        }
+        return ResponseEntity.ok(service.deleteDonors(criteria).snapshot());
+    }
+
+    @GetMapping("/api/donors/purge/{jobId}")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> apiPurgeStatus(@PathVariable String jobId) {
+        PurgeJob job = purgeService.get(jobId);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job.snapshot());
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s.trim();
+    }
+
     @PostMapping("/import")
     public String impPost(@RequestParam("textData") String t, Model m) {
-        ImportResult result = service.importFromText(t);
-        StringBuilder msg = new StringBuilder();
-        msg.append("成功导入 ").append(result.getSuccessCount()).append(" 条数据。");
-        if (result.getFailureCount() > 0) {
-            msg.append(" 失败 ").append(result.getFailureCount()).append(" 条。");
-            msg.append(" <br/>错误详情（前100条）：<br/>");
-            msg.append(String.join("<br/>", result.getErrorMessages()));
+        ImportJob job = importJobService.submitText(t);
+        m.addAttribute("jobId", job.getId());
+        return "import_data";
+    }
+
+    /**
+     * 上传 Tab 分隔文件导入：上传内容先转存为临时文件，再由后台任务流式读取 (任务结束后删除)
+     */
+    @PostMapping("/import/file")
+    public String impFile(@RequestParam("file") MultipartFile file,
+                          @RequestParam(defaultValue = "UTF-8") String charset,
+                          Model m) {
+        if (file.isEmpty()) {
+            m.addAttribute("message", "请选择要导入的文件");
+            return "import_data";
+        }
+        Path tmp = null;
+        try {
+            Charset cs = Charset.forName(charset);
+            tmp = Files.createTempFile("donor-import-", ".tsv");
+            file.transferTo(tmp);
+            ImportJob job = importJobService.submitFile(tmp, cs, file.getOriginalFilename());
+            m.addAttribute("jobId", job.getId());
+        } catch (Exception e) {
+            // 任务未提交成功时临时文件不会被任务删除
+            deleteQuietly(tmp);
+            m.addAttribute("message", "导入失败：" + e.getMessage());
         }
-        m.addAttribute("message", msg.toString());
         return "import_data";
     }
 
+    /**
+     * 以请求体提交后台导入任务，立即返回任务 ID，例如：
+     * curl -u admin:123456 --data-binary @donors.tsv -H "Content-Type: text/tab-separated-values" http://localhost:8080/api/import
+     */
+    @PostMapping("/api/import")
+    @ResponseBody
+    public Map<String, Object> apiImportJob(HttpServletRequest request,
+                                            @RequestParam(defaultValue = "UTF-8") String charset) throws IOException {
+        Charset cs = Charset.forName(charset);
+        Path tmp = Files.createTempFile("donor-import-", ".tsv");
+        try {
+            try (InputStream in = request.getInputStream()) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return importJobService.submitFile(tmp, cs, "request-body").snapshot();
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(tmp);
+            throw e;
+        }
+    }
+
+    private static void deleteQuietly(Path tmp) {
+        if (tmp == null) return;
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            log.warn("删除导入临时文件失败: {}", tmp, e);
+        }
+    }
+
+    /**
+     * 导入任务进度：已读取/解析/提交/失败行数、吞吐量、错误样例
+     */
+    @GetMapping("/api/import/{jobId}")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> apiImportStatus(@PathVariable String jobId) {
+        ImportJob job = importJobService.get(jobId);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job.snapshot());
+    }
+
+    @PostMapping("/api/import/{jobId}/cancel")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> apiImportCancel(@PathVariable String jobId) {
+        ImportJob job = importJobService.get(jobId);
+        if (job == null) return ResponseEntity.notFound().build();
+        importJobService.cancel(jobId);
+        return ResponseEntity.ok(job.snapshot());
+    }
+
+    /**
+     * 直接以请求体流式导入 (适合脚本上传大文件)，例如：
+     * curl -u admin:123456 --data-binary @donors.tsv -H "Content-Type: text/tab-separated-values" http://localhost:8080/api/import/stream
+     */
+    @PostMapping("/api/import/stream")
+    @ResponseBody
+    public ImportResult apiImportStream(HttpServletRequest request,
+                                        @RequestParam(defaultValue = "UTF-8") String charset) throws IOException {
+        try (InputStream in = request.getInputStream()) {
+            return service.importFromStream(in, Charset.forName(charset), progressLogger("request-body"));
+        }
+    }
+
+    private ImportJobService.ImportListener progressLogger(String source) {
+        return (result, linesRead) -> log.info("导入进度 [{}]：已读取 {} 行，成功 {} 条，失败 {} 条",
+                source, linesRead, result.getSuccessCount(), result.getFailureCount());
+    }
+
     @PostMapping("/api/match")
     @ResponseBody
     public List<MatchResult> apiMatch(@RequestParam(required = false) String bloodType,
@@ -131,6 +297,119 @@ public class DonorController {
         return service.matchDonors(bloodType, parseParams(allParams), antibodies, limitResult);
     }
 
+    /**
+     * 流式返回全部配型结果 (NDJSON，每行一个结果)，用于"显示全部"/导出，不在内存中构建完整列表
+     */
+    @PostMapping(value = "/api/match", params = {"stream=true", "format!=compact"})
+    public ResponseEntity<StreamingResponseBody> apiMatchStream(@RequestParam(required = false) String bloodType,
+                                                                @RequestParam(required = false) String antibodies,
+                                                                @RequestParam Map<String, String> allParams) {
+        Map<String, String> pGts = parseParams(allParams);
+        StreamingResponseBody body = out -> {
+            try {
+                service.matchDonors(bloodType, pGts, antibodies, 0, mr -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(mr));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+    }
+
+    /**
+     * 紧凑格式的配型结果 (format=compact)：只含配型页面用到的字段，位点用位掩码表示，格式见 CompactMatchWriter
+     * fields=id,score,grade 只返回指定列；请求头 Accept-Encoding 含 gzip 时压缩响应。
+     * limitResult=true 时走缓存的 Top-N，否则边配型边写出，不在内存中构建完整列表。
+     */
+    @PostMapping(value = "/api/match", params = "format=compact")
+    public ResponseEntity<StreamingResponseBody> apiMatchCompact(@RequestParam(required = false) String bloodType,
+                                                                 @RequestParam(required = false) String antibodies,
+                                                                 @RequestParam(required = false, defaultValue = "false") boolean limitResult,
+                                                                 @RequestParam(required = false) String fields,
+                                                                 @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                                 @RequestParam Map<String, String> allParams) throws IOException {
+        CompactMatchWriter writer;
+        try {
+            writer = new CompactMatchWriter(CompactMatchWriter.parseFields(fields), matchConfig.getAllHpas());
+        } catch (IllegalArgumentException e) {
+            // 返回类型须为 StreamingResponseBody 才会走流式写出，错误信息也以同样方式写出
+            byte[] error = objectMapper.writeValueAsBytes(Map.of("error", e.getMessage()));
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON).body(out -> out.write(error));
+        }
+        Map<String, String> pGts = parseParams(allParams);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? CompactMatchWriter.gzip(out) : out;
+            CompactMatchWriter.Row row = writer.begin(objectMapper.getFactory(), target);
+            if (limitResult) {
+                for (MatchResult mr : service.matchDonors(bloodType, pGts, antibodies, true)) row.write(mr);
+            } else {
+                try {
+                    service.matchDonors(bloodType, pGts, antibodies, 0, mr -> {
+                        try {
+                            row.write(mr);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            row.finish();
+            if (gzip) ((GZIPOutputStream) target).finish();
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return response.body(body);
+    }
+
+    /**
+     * 批量配型 (整个病区的患者一次提交，共用一次供者遍历)，请求体例如：
+     * {"limit": 20, "patients": [{"id": "P001", "bloodType": "A", "antibodies": "A2",
+     *   "genotypes": {"hlaA1": "A*02:01", "hlaB1": "B*15:01", "hpa1": "aa"}}]}
+     * 返回每个患者的前 limit 名 (不填为 match.top-k，最大 match.batch.max-limit)，顺序与请求一致
+     */
+    @PostMapping("/api/match/batch")
+    @ResponseBody
+    public ResponseEntity<?> apiMatchBatch(@RequestBody BatchMatchRequest request) {
+        List<BatchMatchRequest.Patient> patients = request.getPatients();
+        if (patients == null || patients.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "patients 不能为空"));
+        }
+        if (patients.size() > maxBatchPatients) {
+            return ResponseEntity.badRequest().body(Map.of("error", "一次最多提交 " + maxBatchPatients + " 个患者"));
+        }
+        int limit = request.getLimit() == null ? 0 : request.getLimit();
+        if (limit > maxBatchLimit) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit 最大为 " + maxBatchLimit));
+        }
+        for (BatchMatchRequest.Patient p : patients) p.setGenotypes(parseParams(p.getGenotypes()));
+
+        List<List<MatchResult>> results = service.matchDonorsBatch(patients, limit);
+        List<Map<String, Object>> body = new ArrayList<>(patients.size());
+        for (int i = 0; i < patients.size(); i++) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("patientId", patients.get(i).getId());
+            m.put("results", results.get(i));
+            body.add(m);
+        }
+        return ResponseEntity.ok(body);
+    }
+
+    @GetMapping("/api/match/cache")
+    @ResponseBody
+    public Map<String, Object> apiMatchCacheStats() {
+        return matchCache.stats();
+    }
+
     private Map<String, String> parseParams(Map<String, String> allParams) {
         Map<String, String> map = new HashMap<>();
         if (allParams != null) {
@@ -142,10 +421,9 @@ public class DonorController {
                     map.put("HPA-" + number, v);
                 }
 
-                if (k.equals("hlaA1")) map.put("HLA-A1", v.trim());
-                if (k.equals("hlaA2")) map.put("HLA-A2", v.trim());
-                if (k.equals("hlaB1")) map.put("HLA-B1", v.trim());
-                if (k.equals("hlaB2")) map.put("HLA-B2", v.trim());
+                for (int a = 0; a < HlaLocus.ALLELES; a++) {
+                    if (k.equals(HlaLocus.param(a))) map.put(HlaLocus.key(a), v.trim());
+                }
             });
         }
         return map;
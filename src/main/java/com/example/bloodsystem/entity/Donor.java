@@ -1,6 +1,7 @@
 package com.example.bloodsystem.entity;
 
 import jakarta.persistence.*;
+import com.example.bloodsystem.util.HlaLocus;
 import lombok.Data;
 import java.util.HashMap;
 import java.util.Map;
@@ -11,6 +12,7 @@ import java.util.Map;
         @Index(name = "idx_blood_type", columnList = "blood_type"), // 修正为数据库列名
         @Index(name = "idx_donor_id", columnList = "donor_id"),     // 修正为数据库列名
         @Index(name = "idx_name", columnList = "name"),
+        @Index(name = "idx_import_batch", columnList = "import_batch"),
         // HPA 索引
         @Index(name = "idx_hpa1", columnList = "hpa1"),
         @Index(name = "idx_hpa2", columnList = "hpa2"),
@@ -25,7 +27,13 @@ import java.util.Map;
         @Index(name = "idx_hla_a1_g", columnList = "hla_a1_group"),
         @Index(name = "idx_hla_a2_g", columnList = "hla_a2_group"),
         @Index(name = "idx_hla_b1_g", columnList = "hla_b1_group"),
-        @Index(name = "idx_hla_b2_g", columnList = "hla_b2_group")
+        @Index(name = "idx_hla_b2_g", columnList = "hla_b2_group"),
+        @Index(name = "idx_hla_c1_g", columnList = "hla_c1_group"),
+        @Index(name = "idx_hla_c2_g", columnList = "hla_c2_group"),
+        @Index(name = "idx_hla_dr1_g", columnList = "hla_dr1_group"),
+        @Index(name = "idx_hla_dr2_g", columnList = "hla_dr2_group"),
+        @Index(name = "idx_hla_dq1_g", columnList = "hla_dq1_group"),
+        @Index(name = "idx_hla_dq2_g", columnList = "hla_dq2_group")
 })
 public class Donor {
     @Id
@@ -44,6 +52,10 @@ public class Donor {
 
     private String phone;
 
+    // 导入批次 (导入任务 ID)，手工录入的供者为空；用于按批次撤销导入
+    @Column(length = 20, name = "import_batch")
+    private String importBatch;
+
     // --- HPA 基因型 (短名称一般不自动加下划线，保持原样即可，也可以显式加上) ---
     @Column(length = 10) private String hpa1;
     @Column(length = 10) private String hpa2;
@@ -60,6 +72,12 @@ public class Donor {
     @Column(length = 20, name = "hla_a2") private String hlaA2;
     @Column(length = 20, name = "hla_b1") private String hlaB1;
     @Column(length = 20, name = "hla_b2") private String hlaB2;
+    @Column(length = 20, name = "hla_c1") private String hlaC1;
+    @Column(length = 20, name = "hla_c2") private String hlaC2;
+    @Column(length = 20, name = "hla_dr1") private String hlaDr1;
+    @Column(length = 20, name = "hla_dr2") private String hlaDr2;
+    @Column(length = 20, name = "hla_dq1") private String hlaDq1;
+    @Column(length = 20, name = "hla_dq2") private String hlaDq2;
 
     // --- 🔥🔥 核心修复：显式指定数据库列名为下划线格式 ---
 
@@ -87,6 +105,124 @@ public class Donor {
     @Column(name = "hla_b2_code")
     private Integer hlaB2Code;
 
+    @Column(name = "hla_c1_group")
+    private Integer hlaC1Group;
+
+    @Column(name = "hla_c1_code")
+    private Integer hlaC1Code;
+
+    @Column(name = "hla_c2_group")
+    private Integer hlaC2Group;
+
+    @Column(name = "hla_c2_code")
+    private Integer hlaC2Code;
+
+    @Column(name = "hla_dr1_group")
+    private Integer hlaDr1Group;
+
+    @Column(name = "hla_dr1_code")
+    private Integer hlaDr1Code;
+
+    @Column(name = "hla_dr2_group")
+    private Integer hlaDr2Group;
+
+    @Column(name = "hla_dr2_code")
+    private Integer hlaDr2Code;
+
+    @Column(name = "hla_dq1_group")
+    private Integer hlaDq1Group;
+
+    @Column(name = "hla_dq1_code")
+    private Integer hlaDq1Code;
+
+    @Column(name = "hla_dq2_group")
+    private Integer hlaDq2Group;
+
+    @Column(name = "hla_dq2_code")
+    private Integer hlaDq2Code;
+
+    // --- 按等位基因序号访问 HLA (序号规则见 HlaLocus：A1, A2, B1, B2, C1, C2, DR1, DR2, DQ1, DQ2) ---
+
+    public String getHla(int allele) {
+        return switch (allele) {
+            case 0 -> hlaA1;
+            case 1 -> hlaA2;
+            case 2 -> hlaB1;
+            case 3 -> hlaB2;
+            case 4 -> hlaC1;
+            case 5 -> hlaC2;
+            case 6 -> hlaDr1;
+            case 7 -> hlaDr2;
+            case 8 -> hlaDq1;
+            case 9 -> hlaDq2;
+            default -> throw new IndexOutOfBoundsException(allele);
+        };
+    }
+
+    public Integer getHlaGroup(int allele) {
+        return switch (allele) {
+            case 0 -> hlaA1Group;
+            case 1 -> hlaA2Group;
+            case 2 -> hlaB1Group;
+            case 3 -> hlaB2Group;
+            case 4 -> hlaC1Group;
+            case 5 -> hlaC2Group;
+            case 6 -> hlaDr1Group;
+            case 7 -> hlaDr2Group;
+            case 8 -> hlaDq1Group;
+            case 9 -> hlaDq2Group;
+            default -> throw new IndexOutOfBoundsException(allele);
+        };
+    }
+
+    public Integer getHlaCode(int allele) {
+        return switch (allele) {
+            case 0 -> hlaA1Code;
+            case 1 -> hlaA2Code;
+            case 2 -> hlaB1Code;
+            case 3 -> hlaB2Code;
+            case 4 -> hlaC1Code;
+            case 5 -> hlaC2Code;
+            case 6 -> hlaDr1Code;
+            case 7 -> hlaDr2Code;
+            case 8 -> hlaDq1Code;
+            case 9 -> hlaDq2Code;
+            default -> throw new IndexOutOfBoundsException(allele);
+        };
+    }
+
+    public void setHla(int allele, String raw) {
+        switch (allele) {
+            case 0 -> hlaA1 = raw;
+            case 1 -> hlaA2 = raw;
+            case 2 -> hlaB1 = raw;
+            case 3 -> hlaB2 = raw;
+            case 4 -> hlaC1 = raw;
+            case 5 -> hlaC2 = raw;
+            case 6 -> hlaDr1 = raw;
+            case 7 -> hlaDr2 = raw;
+            case 8 -> hlaDq1 = raw;
+            case 9 -> hlaDq2 = raw;
+            default -> throw new IndexOutOfBoundsException(allele);
+        }
+    }
+
+    public void setHlaSplit(int allele, Integer group, Integer code) {
+        switch (allele) {
+            case 0 -> { hlaA1Group = group; hlaA1Code = code; }
+            case 1 -> { hlaA2Group = group; hlaA2Code = code; }
+            case 2 -> { hlaB1Group = group; hlaB1Code = code; }
+            case 3 -> { hlaB2Group = group; hlaB2Code = code; }
+            case 4 -> { hlaC1Group = group; hlaC1Code = code; }
+            case 5 -> { hlaC2Group = group; hlaC2Code = code; }
+            case 6 -> { hlaDr1Group = group; hlaDr1Code = code; }
+            case 7 -> { hlaDr2Group = group; hlaDr2Code = code; }
+            case 8 -> { hlaDq1Group = group; hlaDq1Code = code; }
+            case 9 -> { hlaDq2Group = group; hlaDq2Code = code; }
+            default -> throw new IndexOutOfBoundsException(allele);
+        }
+    }
+
     // --- 辅助方法 ---
 
     public Map<String, String> getGenotypesMap() {
@@ -106,7 +242,14 @@ public class Donor {
 
     public String getGenotype(String locus) {
         if (locus == null) return null;
-        switch (locus.toUpperCase()) {
+        String upper = locus.toUpperCase();
+        if (upper.startsWith("HLA-")) {
+            for (int a = 0; a < HlaLocus.ALLELES; a++) {
+                if (HlaLocus.key(a).equals(upper)) return getHla(a);
+            }
+            return null;
+        }
+        switch (upper) {
             case "HPA-1": return hpa1;
             case "HPA-2": return hpa2;
             case "HPA-3": return hpa3;
@@ -116,10 +259,6 @@ public class Donor {
             case "HPA-10": return hpa10;
             case "HPA-15": return hpa15;
             case "HPA-21": return hpa21;
-            case "HLA-A1": return hlaA1;
-            case "HLA-A2": return hlaA2;
-            case "HLA-B1": return hlaB1;
-            case "HLA-B2": return hlaB2;
             default: return null;
         }
     }
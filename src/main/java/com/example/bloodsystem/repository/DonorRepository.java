@@ -1,13 +1,35 @@
 package com.example.bloodsystem.repository;
 
 import com.example.bloodsystem.entity.Donor;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface DonorRepository extends JpaRepository<Donor, String>, JpaSpecificationExecutor<Donor> {
-    @Query("SELECT d FROM Donor d WHERE d.donorId LIKE %?1% OR d.name LIKE %?1%")
-    Page<Donor> search(String keyword, Pageable pageable);
+    // --- 游标 (keyset) 分页：按 donorId 降序，pageable 只用于限制条数，不触发 COUNT ---
+
+    @Query("SELECT d FROM Donor d ORDER BY d.donorId DESC")
+    List<Donor> findFirstPage(Pageable limit);
+
+    @Query("SELECT d FROM Donor d WHERE d.donorId < ?1 ORDER BY d.donorId DESC")
+    List<Donor> findPageAfter(String cursor, Pageable limit);
+
+    // 上一页：按升序取游标之后的行，调用方再反转
+    @Query("SELECT d FROM Donor d WHERE d.donorId > ?1 ORDER BY d.donorId ASC")
+    List<Donor> findPageBefore(String cursor, Pageable limit);
+
+    @Query("SELECT d FROM Donor d WHERE (d.donorId LIKE %?1% OR d.name LIKE %?1%) ORDER BY d.donorId DESC")
+    List<Donor> searchFirstPage(String keyword, Pageable limit);
+
+    @Query("SELECT d FROM Donor d WHERE (d.donorId LIKE %?1% OR d.name LIKE %?1%) AND d.donorId < ?2 ORDER BY d.donorId DESC")
+    List<Donor> searchPageAfter(String keyword, String cursor, Pageable limit);
+
+    @Query("SELECT d FROM Donor d WHERE (d.donorId LIKE %?1% OR d.name LIKE %?1%) AND d.donorId > ?2 ORDER BY d.donorId ASC")
+    List<Donor> searchPageBefore(String keyword, String cursor, Pageable limit);
+
+    @Query("SELECT COUNT(d) FROM Donor d WHERE d.donorId LIKE %?1% OR d.name LIKE %?1%")
+    long countSearch(String keyword);
 }
\ No newline at end of file
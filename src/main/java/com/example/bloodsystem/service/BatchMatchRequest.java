@@ -0,0 +1,27 @@
+package com.example.bloodsystem.service;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量配型请求 (/api/match/batch 的请求体)
+ * genotypes 的字段名与 /api/match 的表单参数相同：hlaA1, hlaA2, hlaB1, hlaB2, hlaC1 ... hlaDq2 (见 HlaLocus.param), hpa1 ... hpa15
+ */
+@Data
+public class BatchMatchRequest {
+    // 每个患者返回的条数，为空时使用 match.top-k
+    private Integer limit;
+    private List<Patient> patients = new ArrayList<>();
+
+    @Data
+    public static class Patient {
+        // 调用方自己的患者标识，原样返回
+        private String id;
+        private String bloodType;
+        private String antibodies;
+        private Map<String, String> genotypes;
+    }
+}
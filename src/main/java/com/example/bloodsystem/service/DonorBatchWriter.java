@@ -0,0 +1,100 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.util.HlaLocus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 供者批量写入 (绕过 JPA)
+ * 直接用 JDBC 批量语句写 donors 表，配合连接参数 rewriteBatchedStatements=true，
+ * MySQL 驱动会把一批 INSERT 改写成多值 INSERT，一次往返写入整批。
+ * - INSERT：纯插入 (version 与 Hibernate 初始值一致为 0)，主键重复时整批失败，与 JPA persist 行为一致
+ * - UPSERT：INSERT ... ON DUPLICATE KEY UPDATE，已存在的供者覆盖全部字段并把 version 加 1
+ * 需在调用方事务内执行。
+ */
+@Component
+public class DonorBatchWriter {
+
+    public enum Mode { INSERT, UPSERT }
+
+    // HLA 列按 HlaLocus 序号展开：先全部原始字符串，再每条链的 group、code
+    private static final String[] COLUMNS = buildColumns(
+            "donor_id", "name", "gender", "age", "blood_type", "phone", "import_batch",
+            "hpa1", "hpa2", "hpa3", "hpa4", "hpa5", "hpa6", "hpa10", "hpa15", "hpa21");
+
+    private static final String INSERT_SQL = buildInsert();
+    private static final String UPSERT_SQL = buildUpsert();
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    public void write(List<Donor> donors, Mode mode) {
+        if (donors.isEmpty()) return;
+        // 插入时 version 固定为 0；覆盖写入后的 version 取决于库中原有的值，置空表示未知
+        for (Donor d : donors) d.setVersion(mode == Mode.INSERT ? 0 : null);
+        jdbcTemplate.batchUpdate(mode == Mode.UPSERT ? UPSERT_SQL : INSERT_SQL, donors, donors.size(), this::bind);
+    }
+
+    private void bind(PreparedStatement ps, Donor d) throws SQLException {
+        int i = 1;
+        ps.setString(i++, d.getDonorId());
+        ps.setString(i++, d.getName());
+        ps.setString(i++, d.getGender());
+        setInt(ps, i++, d.getAge());
+        ps.setString(i++, d.getBloodType());
+        ps.setString(i++, d.getPhone());
+        ps.setString(i++, d.getImportBatch());
+        ps.setString(i++, d.getHpa1());
+        ps.setString(i++, d.getHpa2());
+        ps.setString(i++, d.getHpa3());
+        ps.setString(i++, d.getHpa4());
+        ps.setString(i++, d.getHpa5());
+        ps.setString(i++, d.getHpa6());
+        ps.setString(i++, d.getHpa10());
+        ps.setString(i++, d.getHpa15());
+        ps.setString(i++, d.getHpa21());
+        for (int a = 0; a < HlaLocus.ALLELES; a++) ps.setString(i++, d.getHla(a));
+        for (int a = 0; a < HlaLocus.ALLELES; a++) {
+            setInt(ps, i++, d.getHlaGroup(a));
+            setInt(ps, i++, d.getHlaCode(a));
+        }
+    }
+
+    private static void setInt(PreparedStatement ps, int i, Integer v) throws SQLException {
+        if (v == null) ps.setNull(i, Types.INTEGER);
+        else ps.setInt(i, v);
+    }
+
+    private static String[] buildColumns(String... base) {
+        List<String> cols = new ArrayList<>(Arrays.asList(base));
+        for (int a = 0; a < HlaLocus.ALLELES; a++) cols.add(HlaLocus.column(a));
+        for (int a = 0; a < HlaLocus.ALLELES; a++) {
+            cols.add(HlaLocus.column(a) + "_group");
+            cols.add(HlaLocus.column(a) + "_code");
+        }
+        return cols.toArray(new String[0]);
+    }
+
+    private static String buildInsert() {
+        StringBuilder sb = new StringBuilder("INSERT INTO donors (version, ");
+        sb.append(String.join(", ", COLUMNS)).append(") VALUES (0");
+        for (int i = 0; i < COLUMNS.length; i++) sb.append(", ?");
+        return sb.append(')').toString();
+    }
+
+    private static String buildUpsert() {
+        StringBuilder sb = new StringBuilder(buildInsert()).append(" ON DUPLICATE KEY UPDATE version = version + 1");
+        for (int i = 1; i < COLUMNS.length; i++) {
+            sb.append(", ").append(COLUMNS[i]).append(" = VALUES(").append(COLUMNS[i]).append(')');
+        }
+        return sb.toString();
+    }
+}
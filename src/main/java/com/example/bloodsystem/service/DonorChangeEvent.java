@@ -0,0 +1,72 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.util.HlaLocus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 供者数据变更事件
+ * 在写事务内发布，监听方用 @TransactionalEventListener(AFTER_COMMIT, fallbackExecution = true) 接收：
+ * 事务提交后才处理，回滚则丢弃；没有事务 (如 TRUNCATE) 时立即处理。
+ * 内存索引、缓存据此按变更行增量更新，不需要重新加载整张表。
+ * 监听方用 @Order 排序：DonorIndex / DonorSearchIndex (1) 先应用变更，MatchCache (2) 再清空。
+ *
+ * @param changes    INSERT / UPDATE 时变更后的供者快照，其余类型为空
+ * @param donorIds   涉及的供者 ID (RESET 时为空)
+ */
+public record DonorChangeEvent(Type type, List<DonorChange> changes, List<String> donorIds) {
+
+    public enum Type {
+        INSERT,  // 新增
+        UPDATE,  // 修改，或不确定是否已存在的覆盖写入 (导入的 jpa / jdbc-upsert 模式)
+        DELETE,  // 删除指定 ID
+        RESET    // 整表清空
+    }
+
+    /**
+     * 发布时复制出的供者快照，只含配型和搜索用到的字段，之后实体再被修改也不影响事件内容
+     * @param version   写入后的 version (乐观锁版本号)，不确定时为 null
+     * @param hlaGroups 各等位基因的 Group，按 HlaLocus 序号 (元素可为 null)
+     * @param hlaCodes  各等位基因的 Specific，顺序同上 (元素可为 null)
+     * @param hpa       HPA 位点 -> 基因型，只含有值的位点
+     */
+    public record DonorChange(String donorId, Integer version, String name, String bloodType,
+                              List<Integer> hlaGroups, List<Integer> hlaCodes, Map<String, String> hpa) {
+
+        public static DonorChange of(Donor d) {
+            List<Integer> groups = new ArrayList<>(HlaLocus.ALLELES);
+            List<Integer> codes = new ArrayList<>(HlaLocus.ALLELES);
+            for (int i = 0; i < HlaLocus.ALLELES; i++) {
+                groups.add(d.getHlaGroup(i));
+                codes.add(d.getHlaCode(i));
+            }
+            return new DonorChange(d.getDonorId(), d.getVersion(), d.getName(), d.getBloodType(), groups, codes, d.getGenotypesMap());
+        }
+
+        public String genotype(String locus) { return hpa.get(locus); }
+    }
+
+    public static DonorChangeEvent inserted(Collection<Donor> donors) { return of(Type.INSERT, donors); }
+
+    public static DonorChangeEvent updated(Collection<Donor> donors) { return of(Type.UPDATE, donors); }
+
+    public static DonorChangeEvent deleted(Collection<String> donorIds) {
+        return new DonorChangeEvent(Type.DELETE, List.of(), List.copyOf(donorIds));
+    }
+
+    public static DonorChangeEvent reset() { return new DonorChangeEvent(Type.RESET, List.of(), List.of()); }
+
+    private static DonorChangeEvent of(Type type, Collection<Donor> donors) {
+        List<DonorChange> changes = new ArrayList<>(donors.size());
+        List<String> ids = new ArrayList<>(donors.size());
+        for (Donor d : donors) {
+            changes.add(DonorChange.of(d));
+            ids.add(d.getDonorId());
+        }
+        return new DonorChangeEvent(type, changes, ids);
+    }
+}
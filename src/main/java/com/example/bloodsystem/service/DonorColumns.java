@@ -0,0 +1,58 @@
+package com.example.bloodsystem.service;
+
+/**
+ * 配型索引的列存储 (DonorIndex 内部使用，调用方负责加锁)
+ * 每个供者占用一个序号 (ordinal)，序号从 0 连续分配，删除后回收复用。
+ * - HeapDonorColumns：堆内原始类型数组，默认
+ * - MappedDonorColumns：堆外内存映射文件，供者数超过堆容量时使用
+ */
+interface DonorColumns {
+
+    /**
+     * 已分配的最大序号 + 1 (扫描上界，其中可能有已删除的空位)
+     */
+    int capacity();
+
+    int size();
+
+    /**
+     * @return 序号，不存在时返回 -1
+     */
+    int find(String donorId);
+
+    /**
+     * 为新供者分配序号 (优先复用已删除的序号)，之后必须调用 set 写入数据
+     */
+    int allocate(String donorId);
+
+    /**
+     * @param hla     各等位基因的 Group
+     * @param alleles 各等位基因在 HlaAlleleTable 中的 ID (0 ~ Short.MAX_VALUE，或 NO_ALLELE)
+     */
+    void set(int ord, int bloodCode, int[] hla, int[] alleles, int hpa, int version);
+
+    void release(int ord);
+
+    boolean isLive(int ord);
+
+    String donorId(int ord);
+
+    int bloodType(int ord);
+
+    int hlaGroup(int ord, int i);
+
+    int hlaAllele(int ord, int i);
+
+    int hpaCodes(int ord);
+
+    int version(int ord);
+
+    /**
+     * 预先扩容到至少 n 个序号 (批量加载前调用，避免逐步扩容)
+     */
+    void ensureCapacity(int n);
+
+    void clear();
+
+    void close();
+}
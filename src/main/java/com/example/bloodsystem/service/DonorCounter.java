@@ -0,0 +1,103 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.repository.DonorRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 供者列表总数
+ * 不带关键词且内存索引已就绪时直接取索引条数；否则返回缓存的 COUNT 结果，
+ * 过期或没有缓存时在后台线程重新统计，页面请求从不等待 COUNT。
+ */
+@Slf4j
+@Component
+public class DonorCounter {
+
+    @Autowired private DonorRepository repository;
+    @Autowired private DonorIndex donorIndex;
+
+    // 缓存的总数多久后在后台刷新
+    @Value("${donor.list.count-ttl-seconds:60}")
+    private long ttlSeconds;
+
+    private static final int MAX_KEYWORDS = 100;
+    private static final String ALL = "";
+
+    private record Entry(long count, long expiresAt) {}
+
+    private final Map<String, Entry> counts = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_KEYWORDS;
+        }
+    };
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "donor-count");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return 总数 (可能是上一次统计的结果)；从未统计过时返回 -1
+     */
+    public long count(String keyword) {
+        if (keyword == null && donorIndex.isReady()) return donorIndex.read(DonorIndex::size);
+        String key = keyword == null ? ALL : keyword;
+        Entry e;
+        synchronized (counts) {
+            e = counts.get(key);
+        }
+        if (e == null || e.expiresAt < System.currentTimeMillis()) refreshAsync(key);
+        return e == null ? -1 : e.count;
+    }
+
+    /**
+     * 供者数据变化后让缓存的总数立即过期：下次访问仍先返回旧值，同时在后台重新统计
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDonorChange(DonorChangeEvent event) {
+        synchronized (counts) {
+            counts.replaceAll((k, e) -> new Entry(e.count, 0));
+        }
+    }
+
+    private void refreshAsync(String key) {
+        if (!refreshing.add(key)) return;
+        executor.execute(() -> {
+            try {
+                long n = key.isEmpty() ? repository.count() : repository.countSearch(key);
+                synchronized (counts) {
+                    counts.put(key, new Entry(n, System.currentTimeMillis() + ttlSeconds * 1000));
+                }
+            } catch (Exception ex) {
+                log.warn("统计供者总数失败: {}", ex.getMessage());
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+}
@@ -0,0 +1,637 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.config.MatchConfig;
+import com.example.bloodsystem.util.HlaAlleleTable;
+import com.example.bloodsystem.util.HlaLocus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * 常驻内存的供者列式索引 (仅配型使用)
+ * 每个供者占用一个 slot，配型需要的字段按列存放 (原始类型，定长)：
+ * - HLA Group：每个 slot HLA_SLOTS 个 int (按 HlaLocus 的等位基因序号：A1, A2, B1, B2, C1 ... DQ2)，-1 表示空
+ * - HLA 等位基因 ID：每个 slot HLA_SLOTS 个 short (HlaAlleleTable 编码，等位基因水平配型使用)，-1 表示空
+ * - HPA 基因型：int，每个位点 2 bit 编码 (aa/ab/bb) + 1 bit 是否有值
+ * - 血型：byte，指向血型字典
+ * 配型时只扫描这些列，最终结果才回表加载 Donor 实体。
+ * 列存储由 match.index.storage 选择：heap (堆内数组) 或 mapped (堆外内存映射文件，见 MappedDonorColumns)。
+ * 启动时优先从快照文件恢复 (见 DonorIndexSnapshot)，再按 version 追平快照之后数据库的变化；
+ * 快照在加载完成后、运行期间定期 (有变化时) 以及关闭时写入。
+ */
+@Slf4j
+@Component
+public class DonorIndex {
+
+    public static final int HLA_SLOTS = HlaLocus.ALLELES;
+    public static final int NO_GROUP = -1;
+
+    // HPA 编码：1=aa, 2=ab, 3=bb, 0=其他非空值 (与任何基因型都不匹配)
+    static final String[] HPA_GENOTYPES = { null, "aa", "ab", "bb" };
+    private static final int HPA_PRESENT_SHIFT = 18;
+    static final int HPA_LOCI = 9;
+    // version 未知 (覆盖写入后) 或为 NULL
+    static final int NO_VERSION = -1;
+
+    private static final int LOAD_CHUNK = 10000;
+    private static final int CATCH_UP_CHUNK = 50000;
+    private static final String LOAD_COLUMNS = "SELECT donor_id, blood_type, " + hlaColumns() +
+            "hpa1, hpa2, hpa3, hpa4, hpa5, hpa6, hpa10, hpa15, hpa21, version FROM donors ";
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private MatchConfig matchConfig;
+
+    @Value("${match.index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${match.index.snapshot.enabled:true}")
+    private boolean snapshotEnabled;
+
+    @Value("${match.index.snapshot.path:data/donor-index.snapshot}")
+    private String snapshotPath;
+
+    // 定期写快照的间隔 (秒)，期间没有变化则跳过
+    @Value("${match.index.snapshot.interval-seconds:600}")
+    private long snapshotIntervalSeconds;
+
+    // 列存储：heap / mapped
+    @Value("${match.index.storage:heap}")
+    private String storage;
+
+    // mapped 模式的工作文件目录
+    @Value("${match.index.storage.path:data/donor-columns}")
+    private String storagePath;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready = false;
+
+    // 列存储 (受 lock 保护)，slot 即列存储的序号
+    private DonorColumns columns = new HeapDonorColumns();
+
+    // 血型字典：code 0 保留给 null
+    private final List<String> bloodTypeNames = new ArrayList<>(List.of(""));
+    private final Map<String, Integer> bloodTypeCodes = new HashMap<>();
+
+    // 加载期间被写操作覆盖过的 ID，加载线程不能再用旧数据覆盖它们
+    private final Set<String> touchedDuringLoad = new HashSet<>();
+    // 正在进行的加载 / 追平数 (启动加载与清空后的追平可能重叠)，全部结束后才清除 touchedDuringLoad
+    private int loaders = 0;
+    private int generation = 0;
+    // 停用次数：停用前开始的加载 / 追平作废，结束时不再把索引标记为就绪
+    private int epoch = 0;
+
+    // 已应用的变更事件数，与写快照时的值比较判断是否需要重写快照
+    private volatile long changeCount = 0;
+    private volatile long snapshotChangeCount = -1;
+    private ScheduledExecutorService snapshotScheduler;
+
+    public boolean isReady() { return enabled && ready; }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (enabled && "mapped".equals(storage)) {
+            columns = new MappedDonorColumns(Path.of(storagePath));
+            log.info("供者索引使用堆外列存储：{}", Path.of(storagePath).toAbsolutePath());
+        }
+    }
+
+    // --- 启动加载 ---
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!enabled) return;
+        Thread t = new Thread(this::load, "donor-index-loader");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void load() {
+        if (!snapshotEnabled) {
+            rebuild();
+            return;
+        }
+        if (!restoreFromSnapshot()) rebuild();
+        snapshotIfChanged();
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "donor-index-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::snapshotIfChanged,
+                snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+            snapshotIfChanged();
+        }
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            columns.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按主键分段 (keyset) 从数据库重建索引，只读取配型需要的列，不经过 Hibernate
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        Load load;
+        lock.writeLock().lock();
+        try {
+            columns.clear();
+            load = startLoading();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            String lastId = null;
+            while (true) {
+                List<IndexRow> rows = (lastId == null)
+                        ? jdbcTemplate.query(LOAD_COLUMNS + "ORDER BY donor_id LIMIT ?", this::mapRow, LOAD_CHUNK)
+                        : jdbcTemplate.query(LOAD_COLUMNS + "WHERE donor_id > ? ORDER BY donor_id LIMIT ?", this::mapRow, lastId, LOAD_CHUNK);
+                if (rows.isEmpty()) break;
+
+                lock.writeLock().lock();
+                try {
+                    if (load.epoch != epoch) break; // 加载期间索引被停用
+                    if (load.generation != generation) {
+                        // 加载期间库被清空，已读到的数据全部作废，之后的写入已直接进入索引
+                        log.info("供者索引加载期间数据被清空，停止加载");
+                        break;
+                    }
+                    for (IndexRow r : rows) {
+                        if (!touchedDuringLoad.contains(r.donorId)) put(r);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                lastId = rows.get(rows.size() - 1).donorId;
+                if (rows.size() < LOAD_CHUNK) break;
+            }
+            if (finishLoading(load)) {
+                log.info("供者索引加载完成：{} 条，耗时 {} ms", size(), System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            invalidate("加载失败: " + e.getMessage());
+        }
+    }
+
+    // 一次加载 / 追平开始时的数据版本 (generation) 和停用次数 (epoch)
+    private record Load(int generation, int epoch) {}
+
+    // 调用方持有写锁
+    private Load startLoading() {
+        if (loaders++ == 0) touchedDuringLoad.clear();
+        return new Load(generation, epoch);
+    }
+
+    /**
+     * 加载 / 追平完成。期间索引被停用过 (同步失败等) 时结果作废，索引保持停用，直到下一次完整加载
+     * @return 索引是否因此就绪 (与其他加载重叠时由最后结束的一个置为就绪)
+     */
+    private boolean finishLoading(Load load) {
+        lock.writeLock().lock();
+        try {
+            if (load.epoch != epoch) {
+                log.warn("供者索引在加载期间被停用，本次加载结果不启用");
+                return false;
+            }
+            if (--loaders > 0) return false;
+            touchedDuringLoad.clear();
+            ready = true;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 加载中途放弃 (调用方持有写锁)，不改变就绪状态
+    private void abortLoading(Load load) {
+        if (load.epoch == epoch && --loaders == 0) touchedDuringLoad.clear();
+    }
+
+    // --- 快照 ---
+
+    /**
+     * 从快照恢复，再追平快照之后数据库的变化
+     * @return false 表示没有可用的快照 (不存在、损坏、格式不符)，调用方改为全量加载
+     */
+    private boolean restoreFromSnapshot() {
+        Path file = Path.of(snapshotPath);
+        if (!Files.exists(file)) return false;
+        long start = System.currentTimeMillis();
+        DonorIndexSnapshot.Snapshot snap;
+        try {
+            snap = DonorIndexSnapshot.open(file);
+        } catch (IOException e) {
+            log.warn("配型索引快照不可用，改为从数据库全量加载: {}", e.getMessage());
+            return false;
+        }
+
+        lock.writeLock().lock();
+        int knownBloodTypes = bloodTypeNames.size();
+        columns.clear();
+        Load load = startLoading();
+        try {
+            int[] codes = new int[snap.bloodTypeNames().size()];
+            for (int c = 1; c < codes.length; c++) codes[c] = bloodTypeCode(snap.bloodTypeNames().get(c));
+            columns.ensureCapacity(snap.count());
+            snap.forEach((id, bloodCode, hla, alleles, hpa, version) -> put(id, codes[bloodCode], hla, alleles, hpa, version));
+        } catch (RuntimeException e) {
+            // 交还加载状态，否则 loaders 停在非零，之后的追平会一直跳过被事件写过的行；
+            // 快照带来的血型也撤回 (持有写锁，期间没有别的写入用到它们)，以免占满血型字典
+            abortLoading(load);
+            columns.clear();
+            while (bloodTypeNames.size() > knownBloodTypes) bloodTypeCodes.remove(bloodTypeNames.remove(bloodTypeNames.size() - 1));
+            log.warn("从快照恢复配型索引失败，改为从数据库全量加载: {}", e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        long restoredAt = System.currentTimeMillis();
+
+        try {
+            int[] caughtUp = catchUp(load);
+            // 快照与数据库一致时不必立即重写快照
+            if (caughtUp[0] == 0 && caughtUp[1] == 0) snapshotChangeCount = changeCount;
+            if (finishLoading(load)) {
+                log.info("供者索引从快照恢复：{} 条 (读取快照 {} ms)；追平数据库变化：重新读取 {} 条，删除 {} 条，共耗时 {} ms",
+                        size(), restoredAt - start, caughtUp[0], caughtUp[1], System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            invalidate("快照追平失败: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * 按主键顺序扫描库中全部 (donor_id, version)：快照中没有或 version 不同的行重新读取，
+     * 快照中有但库中已不存在的行删除。加载期间已被变更事件写过的行以事件为准。
+     * @return {重新读取的行数, 删除的行数}
+     */
+    private int[] catchUp(Load load) {
+        BitSet seen = new BitSet();
+        List<String> stale = new ArrayList<>();
+        String lastId = null;
+        while (true) {
+            List<Object[]> rows = (lastId == null)
+                    ? jdbcTemplate.query("SELECT donor_id, version FROM donors ORDER BY donor_id LIMIT ?",
+                            DonorIndex::mapVersion, CATCH_UP_CHUNK)
+                    : jdbcTemplate.query("SELECT donor_id, version FROM donors WHERE donor_id > ? ORDER BY donor_id LIMIT ?",
+                            DonorIndex::mapVersion, lastId, CATCH_UP_CHUNK);
+            if (rows.isEmpty()) break;
+            lock.readLock().lock();
+            try {
+                for (Object[] r : rows) {
+                    String id = (String) r[0];
+                    int slot = columns.find(id);
+                    if (slot >= 0) seen.set(slot);
+                    if (touchedDuringLoad.contains(id)) continue;
+                    if (slot < 0 || columns.version(slot) != (int) r[1]) stale.add(id);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            lastId = (String) rows.get(rows.size() - 1)[0];
+            if (rows.size() < CATCH_UP_CHUNK) break;
+        }
+
+        int removed = 0;
+        lock.writeLock().lock();
+        try {
+            // 期间库被清空 (索引已随事件清空) 或索引被停用
+            if (load.generation != generation || load.epoch != epoch) return new int[] { 0, 0 };
+            for (int slot = 0; slot < columns.capacity(); slot++) {
+                if (!columns.isLive(slot) || seen.get(slot)) continue;
+                String id = columns.donorId(slot);
+                if (!touchedDuringLoad.contains(id)) {
+                    remove(id);
+                    removed++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        for (int from = 0; from < stale.size(); from += LOAD_CHUNK) {
+            List<String> chunk = stale.subList(from, Math.min(from + LOAD_CHUNK, stale.size()));
+            String in = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            List<IndexRow> rows = jdbcTemplate.query(LOAD_COLUMNS + "WHERE donor_id IN (" + in + ")", this::mapRow, chunk.toArray());
+            lock.writeLock().lock();
+            try {
+                if (load.generation != generation || load.epoch != epoch) break;
+                for (IndexRow r : rows) {
+                    if (!touchedDuringLoad.contains(r.donorId)) put(r);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return new int[] { stale.size(), removed };
+    }
+
+    private static Object[] mapVersion(ResultSet rs, int rowNum) throws SQLException {
+        int v = rs.getInt(2);
+        return new Object[] { rs.getString(1), rs.wasNull() ? NO_VERSION : v };
+    }
+
+    private void snapshotIfChanged() {
+        if (changeCount != snapshotChangeCount) writeSnapshot();
+    }
+
+    /**
+     * 把当前索引写入快照文件
+     * 堆内存储在读锁内复制一份列数据，写文件在锁外进行；堆外存储复制的代价与写文件相当，直接在读锁内写
+     */
+    public synchronized void writeSnapshot() {
+        if (!snapshotEnabled || !isReady()) return;
+        long start = System.currentTimeMillis();
+        DonorColumns source = null;
+        List<String> names;
+        long changesAtCopy;
+        int count;
+        lock.readLock().lock();
+        try {
+            names = List.copyOf(bloodTypeNames);
+            changesAtCopy = changeCount;
+            count = columns.size();
+            if (columns instanceof HeapDonorColumns heap) {
+                source = heap.copyForRead();
+            } else if (!writeSnapshotFile(start, names, columns, changesAtCopy)) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (source != null && !writeSnapshotFile(start, names, source, changesAtCopy)) return;
+        log.info("配型索引快照已写入 {}：{} 条，耗时 {} ms", snapshotPath, count, System.currentTimeMillis() - start);
+    }
+
+    private boolean writeSnapshotFile(long createdAt, List<String> names, DonorColumns source, long changesAtCopy) {
+        try {
+            DonorIndexSnapshot.write(Path.of(snapshotPath), createdAt, names, source);
+            snapshotChangeCount = changesAtCopy;
+            return true;
+        } catch (IOException e) {
+            log.warn("写入配型索引快照失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private IndexRow mapRow(ResultSet rs, int rowNum) throws SQLException {
+        IndexRow r = new IndexRow();
+        r.donorId = rs.getString(1);
+        r.bloodType = rs.getString(2);
+        HlaAlleleTable alleleTable = HlaAlleleTable.get();
+        for (int i = 0; i < HLA_SLOTS; i++) {
+            int g = rs.getInt(3 + i);
+            r.hla[i] = rs.wasNull() ? NO_GROUP : g;
+            int code = rs.getInt(3 + HLA_SLOTS + i);
+            r.alleles[i] = alleleTable.id(HlaLocus.ofAllele(i), r.hla[i], rs.wasNull() ? -1 : code);
+        }
+        String[] hpa = new String[HPA_LOCI];
+        for (int i = 0; i < hpa.length; i++) hpa[i] = rs.getString(3 + 2 * HLA_SLOTS + i);
+        r.hpa = encodeHpa(hpa);
+        int version = rs.getInt(3 + 2 * HLA_SLOTS + HPA_LOCI);
+        r.version = rs.wasNull() ? NO_VERSION : version;
+        return r;
+    }
+
+    // --- 写操作同步 (按变更事件增量更新，在事务提交后生效，回滚则不改动索引) ---
+
+    // 先于 MatchCache 执行 (见 DonorChangeEvent)
+    @Order(1)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDonorChange(DonorChangeEvent event) {
+        switch (event.type()) {
+            case INSERT, UPDATE -> {
+                List<IndexRow> rows = new ArrayList<>(event.changes().size());
+                for (DonorChangeEvent.DonorChange c : event.changes()) rows.add(toRow(c));
+                write(() -> rows.forEach(r -> { touch(r.donorId); put(r); }));
+            }
+            case DELETE -> write(() -> event.donorIds().forEach(id -> { touch(id); remove(id); }));
+            case RESET -> {
+                write(() -> {
+                    columns.clear();
+                    generation++;
+                });
+                if (enabled) catchUpAfterReset();
+            }
+        }
+    }
+
+    /**
+     * 清空 (TRUNCATE) 不在事务中，与并发导入之间没有先后保证：清空后刚提交的插入，其事件可能先于 RESET 被处理，
+     * 随后被 RESET 一并清掉。因此清空后按 version 追平一次数据库 (此时表中只剩清空后写入的行，代价很小)，
+     * 追平期间到达的事件照常生效并以事件为准。
+     */
+    private void catchUpAfterReset() {
+        Load load;
+        lock.writeLock().lock();
+        try {
+            load = startLoading();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            int[] caughtUp = catchUp(load);
+            if (finishLoading(load)) log.info("供者表清空后追平数据库：读取 {} 条，删除 {} 条", caughtUp[0], caughtUp[1]);
+        } catch (Exception e) {
+            invalidate("清空后追平失败: " + e.getMessage());
+        }
+    }
+
+    private void write(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            changeCount++;
+            action.run();
+        } catch (RuntimeException e) {
+            invalidateLocked("同步失败: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void touch(String donorId) {
+        if (loaders > 0) touchedDuringLoad.add(donorId);
+    }
+
+    /**
+     * 索引与数据库可能不一致时停用索引，配型退回 SQL 全表扫描
+     */
+    private void invalidate(String reason) {
+        lock.writeLock().lock();
+        try {
+            invalidateLocked(reason);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void invalidateLocked(String reason) {
+        ready = false;
+        loaders = 0;
+        epoch++;
+        touchedDuringLoad.clear();
+        log.warn("供者索引已停用，配型将回退为数据库扫描。原因：{}", reason);
+    }
+
+    // --- 读操作 ---
+
+    /**
+     * 在读锁内访问索引，回调里不能保留 slot 到锁外使用 (slot 可能被复用)
+     */
+    public <T> T read(Function<DonorIndex, T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.apply(this);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int capacity() { return columns.capacity(); }
+    public int size() { return columns.size(); }
+    public boolean isLive(int slot) { return columns.isLive(slot); }
+    public String donorId(int slot) { return columns.donorId(slot); }
+    public int bloodType(int slot) { return columns.bloodType(slot); }
+    public int hlaGroup(int slot, int i) { return columns.hlaGroup(slot, i); }
+    public int hlaAllele(int slot, int i) { return columns.hlaAllele(slot, i); }
+    public int hpaCodes(int slot) { return columns.hpaCodes(slot); }
+
+    /**
+     * 患者血型对应的可接受血型编码表；不限血型时返回 null
+     * 与 SQL 的 blood_type = ? 保持一致：忽略大小写和首尾空格
+     */
+    public boolean[] bloodTypeFilter(String patientBloodType) {
+        if (patientBloodType == null || patientBloodType.isEmpty()) return null;
+        boolean[] accepted = new boolean[256];
+        String p = patientBloodType.trim();
+        for (int code = 1; code < bloodTypeNames.size(); code++) {
+            if (bloodTypeNames.get(code).trim().equalsIgnoreCase(p)) accepted[code] = true;
+        }
+        return accepted;
+    }
+
+    public static boolean hpaPresent(int packed, int locus) {
+        return (packed & (1 << (HPA_PRESENT_SHIFT + locus))) != 0;
+    }
+
+    public static int hpaCode(int packed, int locus) {
+        return (packed >>> (locus * 2)) & 0x3;
+    }
+
+    // --- 内部实现 ---
+
+    // 先全部 Group 列，再全部 Code 列
+    private static String hlaColumns() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < HLA_SLOTS; i++) sb.append(HlaLocus.column(i)).append("_group, ");
+        for (int i = 0; i < HLA_SLOTS; i++) sb.append(HlaLocus.column(i)).append("_code, ");
+        return sb.toString();
+    }
+
+    private IndexRow toRow(DonorChangeEvent.DonorChange c) {
+        IndexRow r = new IndexRow();
+        r.donorId = c.donorId();
+        r.bloodType = c.bloodType();
+        HlaAlleleTable alleleTable = HlaAlleleTable.get();
+        for (int i = 0; i < HLA_SLOTS; i++) {
+            r.hla[i] = groupOrNone(c.hlaGroups().get(i));
+            r.alleles[i] = alleleTable.id(HlaLocus.ofAllele(i), c.hlaGroups().get(i), c.hlaCodes().get(i));
+        }
+        List<String> loci = matchConfig.getAllHpas();
+        String[] hpa = new String[loci.size()];
+        for (int i = 0; i < hpa.length; i++) hpa[i] = c.genotype(loci.get(i));
+        r.hpa = encodeHpa(hpa);
+        r.version = c.version() == null ? NO_VERSION : c.version();
+        return r;
+    }
+
+    private static int groupOrNone(Integer g) { return g == null ? NO_GROUP : g; }
+
+    static int encodeHpa(String[] values) {
+        int packed = 0;
+        for (int i = 0; i < values.length; i++) {
+            String v = values[i];
+            if (v == null || v.isEmpty()) continue;
+            packed |= hpaCodeOf(v) << (i * 2);
+            packed |= 1 << (HPA_PRESENT_SHIFT + i);
+        }
+        return packed;
+    }
+
+    /**
+     * 非空 HPA 基因型 -> 编码 (不在 aa/ab/bb 中的值编码为 0)
+     */
+    static int hpaCodeOf(String v) {
+        for (int c = 1; c < HPA_GENOTYPES.length; c++) {
+            if (HPA_GENOTYPES[c].equals(v)) return c;
+        }
+        return 0;
+    }
+
+    private void put(IndexRow r) {
+        put(r.donorId, bloodTypeCode(r.bloodType), r.hla, r.alleles, r.hpa, r.version);
+    }
+
+    private void put(String donorId, int bloodCode, int[] hla, int[] alleles, int hpa, int version) {
+        int slot = columns.find(donorId);
+        if (slot < 0) slot = columns.allocate(donorId);
+        columns.set(slot, bloodCode, hla, alleles, hpa, version);
+    }
+
+    private void remove(String donorId) {
+        int slot = columns.find(donorId);
+        if (slot >= 0) columns.release(slot);
+    }
+
+    private int bloodTypeCode(String bloodType) {
+        if (bloodType == null) return 0;
+        Integer code = bloodTypeCodes.get(bloodType);
+        if (code == null) {
+            if (bloodTypeNames.size() > 255) throw new IllegalStateException("血型取值超过 255 种");
+            code = bloodTypeNames.size();
+            bloodTypeNames.add(bloodType);
+            bloodTypeCodes.put(bloodType, code);
+        }
+        return code;
+    }
+
+    private static class IndexRow {
+        String donorId;
+        String bloodType;
+        final int[] hla = new int[HLA_SLOTS];
+        final int[] alleles = new int[HLA_SLOTS];
+        int hpa;
+        int version;
+    }
+}
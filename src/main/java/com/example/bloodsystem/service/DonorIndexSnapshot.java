@@ -0,0 +1,238 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.util.HlaAlleleTable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 配型索引快照文件 (二进制，按列存放，末尾为 CRC32)
+ * 布局：魔数、格式版本、HLA 槽数、HPA 位点数、HLA 等位基因表指纹、生成时间、行数、血型字典，
+ * 之后依次为 ID 列 (长度 + UTF-8)、血型编码列、HLA Group 列、HLA 等位基因 ID 列 (short)、HPA 编码列、version 列，
+ * 最后 8 字节为前面全部内容的 CRC32。等位基因 ID 依赖等位基因表，表内容变化 (指纹不同) 时快照作废。
+ * 写入先写临时文件再原子替换；读取用内存映射，先校验 CRC，再逐行从映射中读取 (不在堆上整列解码，
+ * 适用于堆外的列存储)。单个映射最大 2GB，文件按段映射 (同 MappedDonorColumns)，大小不受限制。
+ */
+final class DonorIndexSnapshot {
+
+    private static final int MAGIC = 0x42534958; // "BSIX"
+    private static final int FORMAT_VERSION = 2;
+    // 映射分段 (1GB)；相邻段多映射 MAX_READ 字节，跨段边界的一次读取 (数值、ID 字符串) 总能在一个段内完成
+    private static final int SEGMENT_SHIFT = 30;
+    private static final int MAX_READ = 2 + 0xFFFF;
+
+    private DonorIndexSnapshot() {}
+
+    /**
+     * 写入 cols 中的全部有效行 (按序号顺序)，调用方保证期间 cols 不被修改
+     */
+    static void write(Path file, long createdAt, List<String> bloodTypeNames, DonorColumns cols) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        int capacity = cols.capacity();
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                 BufferedOutputStream buffered = new BufferedOutputStream(fos, 1 << 16)) {
+                CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(DonorIndex.HLA_SLOTS);
+                out.writeInt(DonorIndex.HPA_LOCI);
+                out.writeInt(HlaAlleleTable.get().fingerprint());
+                out.writeLong(createdAt);
+                out.writeInt(cols.size());
+                out.writeInt(bloodTypeNames.size());
+                for (String name : bloodTypeNames) writeString(out, name);
+                // 按列写：每列一遍扫描
+                for (int ord = 0; ord < capacity; ord++) {
+                    if (cols.isLive(ord)) writeString(out, cols.donorId(ord));
+                }
+                for (int ord = 0; ord < capacity; ord++) {
+                    if (cols.isLive(ord)) out.writeByte(cols.bloodType(ord));
+                }
+                for (int ord = 0; ord < capacity; ord++) {
+                    if (!cols.isLive(ord)) continue;
+                    for (int i = 0; i < DonorIndex.HLA_SLOTS; i++) out.writeInt(cols.hlaGroup(ord, i));
+                }
+                for (int ord = 0; ord < capacity; ord++) {
+                    if (!cols.isLive(ord)) continue;
+                    for (int i = 0; i < DonorIndex.HLA_SLOTS; i++) out.writeShort(cols.hlaAllele(ord, i));
+                }
+                for (int ord = 0; ord < capacity; ord++) {
+                    if (cols.isLive(ord)) out.writeInt(cols.hpaCodes(ord));
+                }
+                for (int ord = 0; ord < capacity; ord++) {
+                    if (cols.isLive(ord)) out.writeInt(cols.version(ord));
+                }
+                out.flush();
+                // CRC 本身不计入校验
+                new DataOutputStream(buffered).writeLong(checked.getChecksum().getValue());
+                buffered.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 打开并校验快照 (CRC、格式版本、位点布局、各列长度)，行数据留在映射中，由 forEach 逐行读取
+     * @throws IOException 文件损坏、格式版本或索引布局不一致
+     */
+    static Snapshot open(Path file) throws IOException {
+        return open(file, SEGMENT_SHIFT);
+    }
+
+    static Snapshot open(Path file, int segmentShift) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < 44) throw new IOException("快照大小异常: " + size);
+            Mapped buf = new Mapped(ch, size, segmentShift);
+
+            if (buf.crc(size - 8) != buf.getLong(size - 8)) throw new IOException("快照校验失败 (CRC 不一致)");
+
+            if (buf.getInt(0) != MAGIC) throw new IOException("不是配型索引快照文件");
+            int format = buf.getInt(4);
+            if (format != FORMAT_VERSION) throw new IOException("快照格式版本不支持: " + format);
+            if (buf.getInt(8) != DonorIndex.HLA_SLOTS || buf.getInt(12) != DonorIndex.HPA_LOCI) {
+                throw new IOException("快照的位点布局与当前版本不一致");
+            }
+            if (buf.getInt(16) != HlaAlleleTable.get().fingerprint()) throw new IOException("快照的 HLA 等位基因表与当前版本不一致");
+            // 20: 生成时间
+            int count = buf.getInt(28);
+            int names = buf.getInt(32);
+            long pos = 36;
+            List<String> bloodTypeNames = new ArrayList<>(names);
+            for (int i = 0; i < names; i++) {
+                bloodTypeNames.add(buf.getString(pos));
+                pos += 2 + buf.getLength(pos);
+            }
+
+            // 跳过 ID 列得到定长列的起点
+            long idsStart = pos;
+            for (int i = 0; i < count; i++) pos += 2 + buf.getLength(pos);
+            long end = pos + (long) count * (1 + DonorIndex.HLA_SLOTS * 6 + 4 + 4);
+            if (end != size - 8) throw new IOException("快照内容损坏: 列长度与行数不符");
+            return new Snapshot(buf, count, bloodTypeNames, idsStart, pos);
+        } catch (RuntimeException e) {
+            // 长度字段被篡改等导致的越界
+            throw new IOException("快照内容损坏: " + e, e);
+        }
+    }
+
+    interface RowVisitor {
+        /**
+         * @param hla     本行的 HLA Group (复用的数组，不能保留)
+         * @param alleles 本行的 HLA 等位基因 ID (同上)
+         */
+        void row(String donorId, int bloodCode, int[] hla, int[] alleles, int hpa, int version);
+    }
+
+    /**
+     * 已校验的快照，按行顺序读取，不把整列解码到堆上
+     */
+    static final class Snapshot {
+        private final Mapped buf;
+        private final int count;
+        private final List<String> bloodTypeNames;
+        private final long idsStart;
+        private final long bloodTypesStart;
+
+        private Snapshot(Mapped buf, int count, List<String> bloodTypeNames, long idsStart, long bloodTypesStart) {
+            this.buf = buf;
+            this.count = count;
+            this.bloodTypeNames = bloodTypeNames;
+            this.idsStart = idsStart;
+            this.bloodTypesStart = bloodTypesStart;
+        }
+
+        int count() { return count; }
+        List<String> bloodTypeNames() { return bloodTypeNames; }
+
+        void forEach(RowVisitor visitor) {
+            long idPos = idsStart;
+            long hlaStart = bloodTypesStart + count;
+            long allelesStart = hlaStart + (long) count * DonorIndex.HLA_SLOTS * 4;
+            long hpaStart = allelesStart + (long) count * DonorIndex.HLA_SLOTS * 2;
+            long versionStart = hpaStart + (long) count * 4;
+            int[] hla = new int[DonorIndex.HLA_SLOTS];
+            int[] alleles = new int[DonorIndex.HLA_SLOTS];
+            for (int row = 0; row < count; row++) {
+                String id = buf.getString(idPos);
+                idPos += 2 + buf.getLength(idPos);
+                long slot = (long) row * DonorIndex.HLA_SLOTS;
+                for (int i = 0; i < hla.length; i++) hla[i] = buf.getInt(hlaStart + (slot + i) * 4);
+                for (int i = 0; i < alleles.length; i++) alleles[i] = buf.getShort(allelesStart + (slot + i) * 2);
+                visitor.row(id, buf.get(bloodTypesStart + row) & 0xFF, hla, alleles,
+                        buf.getInt(hpaStart + row * 4L), buf.getInt(versionStart + row * 4L));
+            }
+        }
+    }
+
+    /**
+     * 按段只读映射的文件，用 long 偏移读取。第 i 段映射 [i << shift, (i + 1) << shift + MAX_READ) (不超过文件末尾)，
+     * 从段内任意位置开始、不超过 MAX_READ 字节的读取都不会跨越映射
+     */
+    private static final class Mapped {
+        private final ByteBuffer[] segments;
+        private final int shift;
+        private final long mask;
+
+        Mapped(FileChannel ch, long size, int shift) throws IOException {
+            this.shift = shift;
+            this.mask = (1L << shift) - 1;
+            int count = (int) ((size + mask) >>> shift);
+            segments = new ByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long from = (long) i << shift;
+                long len = Math.min(size - from, (1L << shift) + MAX_READ);
+                segments[i] = ch.map(FileChannel.MapMode.READ_ONLY, from, len);
+            }
+        }
+
+        private ByteBuffer segment(long pos) { return segments[(int) (pos >>> shift)]; }
+
+        byte get(long pos) { return segment(pos).get((int) (pos & mask)); }
+        short getShort(long pos) { return segment(pos).getShort((int) (pos & mask)); }
+        int getInt(long pos) { return segment(pos).getInt((int) (pos & mask)); }
+        long getLong(long pos) { return segment(pos).getLong((int) (pos & mask)); }
+
+        int getLength(long pos) { return Short.toUnsignedInt(getShort(pos)); }
+
+        String getString(long pos) {
+            byte[] bytes = new byte[getLength(pos)];
+            segment(pos).get((int) (pos & mask) + 2, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // [0, end) 的 CRC32，每段只计不重叠的部分
+        long crc(long end) {
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < segments.length && ((long) i << shift) < end; i++) {
+                long from = (long) i << shift;
+                int len = (int) Math.min(end - from, 1L << shift);
+                crc.update(segments[i].duplicate().position(0).limit(len));
+            }
+            return crc.getValue();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.bloodsystem.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 批量删除供者 (后台任务，同一时间只执行一个)
+ * - 清空全部：优先 TRUNCATE (不产生逐行 undo，瞬间完成)，没有权限等失败时退化为分块删除
+ * - 按导入批次 / ID 前缀删除：按主键顺序 (keyset) 每次取一块 ID，在独立的短事务中删除，
+ *   每块提交后发布删除事件 (内存索引、缓存随之增量更新)，块之间可暂停让出锁。全程不加载实体。
+ */
+@Slf4j
+@Service
+public class DonorPurgeService {
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private TransactionTemplate transactionTemplate;
+    @Autowired private ApplicationEventPublisher eventPublisher;
+
+    // 每个删除事务的行数
+    @Value("${purge.chunk-size:1000}")
+    private int chunkSize;
+
+    // 两个删除事务之间的暂停 (毫秒)，给其他事务让出锁
+    @Value("${purge.pause-ms:0}")
+    private long pauseMs;
+
+    // 清空全部时是否使用 TRUNCATE
+    @Value("${purge.use-truncate:true}")
+    private boolean useTruncate;
+
+    private static final int MAX_JOBS_RETAINED = 50;
+
+    private final Map<String, PurgeJob> jobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PurgeJob> eldest) {
+            return size() > MAX_JOBS_RETAINED;
+        }
+    });
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "donor-purge");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 删除条件 (为 null 的条件不生效；全部为 null 表示清空)
+     */
+    public record Criteria(String importBatch, String idPrefix) {
+
+        public static Criteria all() { return new Criteria(null, null); }
+
+        boolean isAll() { return importBatch == null && idPrefix == null; }
+
+        String describe() {
+            if (isAll()) return "清空全部供者";
+            List<String> parts = new ArrayList<>();
+            if (importBatch != null) parts.add("导入批次 = " + importBatch);
+            if (idPrefix != null) parts.add("ID 前缀 = " + idPrefix);
+            return "删除供者：" + String.join("，", parts);
+        }
+    }
+
+    public PurgeJob submit(Criteria criteria) {
+        PurgeJob job = new PurgeJob(UUID.randomUUID().toString().replace("-", "").substring(0, 12), criteria.describe());
+        jobs.put(job.getId(), job);
+        executor.execute(() -> run(job, criteria));
+        return job;
+    }
+
+    public PurgeJob get(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    private void run(PurgeJob job, Criteria criteria) {
+        String failure = null;
+        try {
+            if (criteria.isAll() && useTruncate && truncate(job)) return;
+            job.markStarted("chunked-delete");
+            deleteInChunks(job, criteria);
+        } catch (Exception e) {
+            log.error("删除任务 {} 失败", job.getId(), e);
+            failure = e.getMessage();
+        } finally {
+            job.markFinished(failure);
+            log.info("删除任务 {} 结束：{}，删除 {} 行", job.getId(), job.getStatus(), job.deleted.get());
+        }
+    }
+
+    private boolean truncate(PurgeJob job) {
+        job.markStarted("truncate");
+        try {
+            // TRUNCATE 不返回行数，只能先统计；期间并发写入的行不计入，因此标记为近似值
+            Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM donors", Long.class);
+            jdbcTemplate.execute("TRUNCATE TABLE donors");
+            job.deleted.set(count == null ? 0 : count);
+            job.deletedApproximate = true;
+            // TRUNCATE 不在事务中，监听方立即处理 (内存索引清空后会按 version 追平清空后写入的行)
+            eventPublisher.publishEvent(DonorChangeEvent.reset());
+            return true;
+        } catch (DataAccessException e) {
+            log.warn("TRUNCATE 失败，改为分块删除: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void deleteInChunks(PurgeJob job, Criteria criteria) throws InterruptedException {
+        StringBuilder where = new StringBuilder("donor_id > ?");
+        List<Object> filterParams = new ArrayList<>();
+        if (criteria.importBatch() != null) {
+            where.append(" AND import_batch = ?");
+            filterParams.add(criteria.importBatch());
+        }
+        if (criteria.idPrefix() != null) {
+            where.append(" AND donor_id LIKE ? ESCAPE '!'");
+            filterParams.add(escapeLike(criteria.idPrefix()) + "%");
+        }
+        String select = "SELECT donor_id FROM donors WHERE " + where + " ORDER BY donor_id LIMIT " + chunkSize;
+
+        String lastId = "";
+        while (true) {
+            List<Object> params = new ArrayList<>(filterParams.size() + 1);
+            params.add(lastId);
+            params.addAll(filterParams);
+            List<String> ids = jdbcTemplate.queryForList(select, String.class, params.toArray());
+            if (ids.isEmpty()) return;
+
+            transactionTemplate.executeWithoutResult(status -> {
+                String in = String.join(",", Collections.nCopies(ids.size(), "?"));
+                jdbcTemplate.update("DELETE FROM donors WHERE donor_id IN (" + in + ")", ids.toArray());
+                eventPublisher.publishEvent(DonorChangeEvent.deleted(ids));
+            });
+            job.deleted.addAndGet(ids.size());
+            lastId = ids.get(ids.size() - 1);
+            if (pauseMs > 0) Thread.sleep(pauseMs);
+        }
+    }
+
+    // LIKE 通配符转义 (转义符为 !)
+    private static String escapeLike(String s) {
+        return s.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+}
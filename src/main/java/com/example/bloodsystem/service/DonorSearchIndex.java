@@ -0,0 +1,351 @@
+package com.example.bloodsystem.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 供者关键词搜索索引 (常驻内存的 n-gram 倒排索引，替代 LIKE '%kw%' 全表扫描)
+ * 对 ID 和姓名 (小写) 的每个字符 (1-gram) 和相邻两个字符 (2-gram) 建倒排表，按字符而不是按词切分，
+ * 中文姓名无需分词。查询时求关键词所有 2-gram 倒排表的交集 (单字关键词用 1-gram)，
+ * 再对候选做一次子串校验 (一、两个字符的关键词命中 gram 即包含，不需校验)，结果与 "ID 或姓名包含关键词 (忽略大小写)" 一致。
+ * 删除只打标记，作废的文档过多时整体压缩。索引未就绪时调用方退回 SQL LIKE。
+ * 分页按 ID_ORDER 排序，对字母数字组成的 ID 与 MySQL 默认排序规则 (utf8mb4_0900_ai_ci) 一致；以下情况与 SQL 回退的顺序不同：
+ * 以不同符号区分的 ID、含重音字母等非 ASCII 字符的 ID (_ai 视为相同字母)，以及区分大小写的排序规则 (如 H2 默认) 下大小写混合的 ID。
+ * 单字关键词的候选就是整条 1-gram 倒排表，常用字接近全部供者 (为给出总数必须遍历一遍)。
+ */
+@Slf4j
+@Component
+public class DonorSearchIndex {
+
+    private static final int LOAD_CHUNK = 10000;
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * 分页的 ID 顺序，近似 MySQL 默认的 utf8mb4_0900_ai_ci：符号 < 数字 < 字母，字母不区分大小写；
+     * 只差大小写的 ID 再按字符排，保证全序 (_ci 排序规则下这样的 ID 不能同时作为主键存在)
+     */
+    static final Comparator<String> ID_ORDER = DonorSearchIndex::compareIds;
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Value("${search.index.enabled:true}")
+    private boolean enabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready = false;
+
+    // --- 文档与倒排表 (受 lock 保护) ---
+    // 文档号只增不减，倒排表按文档号有序追加；删除/更新后旧文档号作废 (docIds 置 null)
+    private String[] docIds = new String[0];
+    private String[] docTexts = new String[0]; // 小写的 "ID\0姓名"
+    private int docCount = 0;
+    private int deadDocs = 0;
+    private final Map<String, Integer> docById = new HashMap<>();
+    private final Map<Integer, Postings> postings = new HashMap<>();
+
+    private final Set<String> touchedDuringLoad = new HashSet<>();
+    private boolean loading = false;
+    private int generation = 0;
+
+    /**
+     * 一页搜索结果：ids 的顺序与 DonorRepository 的游标查询一致 (向后翻页降序，向前翻页升序)
+     */
+    public record Page(List<String> ids, int total) {}
+
+    public boolean isReady() { return enabled && ready; }
+
+    // --- 启动加载 ---
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!enabled) return;
+        Thread t = new Thread(this::rebuild, "donor-search-loader");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        int startGen;
+        lock.writeLock().lock();
+        try {
+            reset();
+            loading = true;
+            touchedDuringLoad.clear();
+            startGen = generation;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            String lastId = null;
+            while (true) {
+                List<String[]> rows = (lastId == null)
+                        ? jdbcTemplate.query("SELECT donor_id, name FROM donors ORDER BY donor_id LIMIT ?",
+                                (rs, i) -> new String[] { rs.getString(1), rs.getString(2) }, LOAD_CHUNK)
+                        : jdbcTemplate.query("SELECT donor_id, name FROM donors WHERE donor_id > ? ORDER BY donor_id LIMIT ?",
+                                (rs, i) -> new String[] { rs.getString(1), rs.getString(2) }, lastId, LOAD_CHUNK);
+                if (rows.isEmpty()) break;
+
+                lock.writeLock().lock();
+                try {
+                    if (generation != startGen) {
+                        log.info("搜索索引加载期间数据被清空，停止加载");
+                        break;
+                    }
+                    for (String[] r : rows) {
+                        if (!touchedDuringLoad.contains(r[0])) put(r[0], r[1]);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                lastId = rows.get(rows.size() - 1)[0];
+                if (rows.size() < LOAD_CHUNK) break;
+            }
+            int loaded;
+            lock.writeLock().lock();
+            try {
+                loading = false;
+                touchedDuringLoad.clear();
+                ready = true;
+                loaded = docById.size();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("搜索索引加载完成：{} 条，{} 个 gram，耗时 {} ms", loaded, postings.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            invalidate("加载失败: " + e.getMessage());
+        }
+    }
+
+    // --- 写操作同步 (按变更事件增量更新，在事务提交后生效) ---
+
+    // 先于 MatchCache 执行 (见 DonorChangeEvent)
+    @Order(1)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDonorChange(DonorChangeEvent event) {
+        switch (event.type()) {
+            case INSERT, UPDATE -> write(() -> event.changes().forEach(c -> { touch(c.donorId()); put(c.donorId(), c.name()); }));
+            case DELETE -> write(() -> event.donorIds().forEach(id -> { touch(id); remove(id); }));
+            case RESET -> {
+                write(() -> {
+                    reset();
+                    generation++;
+                });
+                // 清空不在事务中，清空后刚提交的插入事件可能已被上面一并清掉；此时表中只剩清空后写入的行，重新加载一次
+                if (enabled) rebuild();
+            }
+        }
+    }
+
+    private void write(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+            if (deadDocs > 10000 && deadDocs > docById.size()) compact();
+        } catch (RuntimeException e) {
+            ready = false;
+            loading = false;
+            log.warn("搜索索引已停用，搜索将回退为数据库 LIKE。原因：同步失败: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void touch(String donorId) {
+        if (loading) touchedDuringLoad.add(donorId);
+    }
+
+    private void invalidate(String reason) {
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            loading = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.warn("搜索索引已停用，搜索将回退为数据库 LIKE。原因：{}", reason);
+    }
+
+    // --- 查询 ---
+
+    /**
+     * ID 或姓名包含 keyword (忽略大小写) 的供者，按 ID 游标取一页
+     * @param after  非空时取 ID 小于它的，降序
+     * @param before 非空且 after 为空时取 ID 大于它的，升序
+     * @param limit  最多返回条数
+     */
+    public Page search(String keyword, String after, String before, int limit) {
+        String kw = keyword.toLowerCase(Locale.ROOT);
+        boolean backward = (after == null || after.isEmpty()) && before != null && !before.isEmpty();
+        String cursor = backward ? before : after;
+        if (cursor != null && cursor.isEmpty()) cursor = null;
+        boolean verify = kw.length() > 2;
+        // 小顶/大顶堆只保留离游标最近的 limit 个，堆顶是其中离游标最远的
+        Comparator<String> order = backward ? ID_ORDER : ID_ORDER.reversed();
+        PriorityQueue<String> heap = new PriorityQueue<>(limit + 1, order.reversed());
+
+        int total = 0;
+        lock.readLock().lock();
+        try {
+            for (int doc : candidates(kw)) {
+                String id = docIds[doc];
+                if (id == null || verify && !docTexts[doc].contains(kw)) continue;
+                total++;
+                if (cursor != null) {
+                    int c = ID_ORDER.compare(id, cursor);
+                    if (backward ? c <= 0 : c >= 0) continue;
+                }
+                if (!heap.isEmpty() && heap.size() >= limit && order.compare(id, heap.peek()) >= 0) continue;
+                heap.offer(id);
+                if (heap.size() > limit) heap.poll();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<String> ids = new ArrayList<>(heap);
+        ids.sort(order);
+        return new Page(ids, total);
+    }
+
+    static int compareIds(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        for (int i = 0; i < n; i++) {
+            char x = a.charAt(i), y = b.charAt(i);
+            if (x == y) continue;
+            int c = Integer.compare(collationWeight(x), collationWeight(y));
+            if (c != 0) return c;
+        }
+        if (a.length() != b.length()) return a.length() - b.length();
+        return a.compareTo(b);
+    }
+
+    // 符号之间按码位排 (MySQL 按 UCA 权重，只在符号开头不同的 ID 上有差别)
+    private static int collationWeight(char c) {
+        if (Character.isLetter(c)) return 0x20000 + Character.toLowerCase(c);
+        if (Character.isDigit(c)) return 0x10000 + c;
+        return c;
+    }
+
+    // 关键词所有 gram 的倒排表交集 (从最短的开始)
+    private int[] candidates(String kw) {
+        if (kw.isEmpty()) return new int[0];
+        List<Postings> lists = new ArrayList<>();
+        if (kw.length() == 1) {
+            Postings p = postings.get(unigram(kw.charAt(0)));
+            if (p == null) return new int[0];
+            lists.add(p);
+        } else {
+            for (int i = 0; i + 1 < kw.length(); i++) {
+                Postings p = postings.get(bigram(kw.charAt(i), kw.charAt(i + 1)));
+                if (p == null) return new int[0];
+                if (!lists.contains(p)) lists.add(p);
+            }
+        }
+        lists.sort(Comparator.comparingInt(p -> p.size));
+        int[] result = Arrays.copyOf(lists.get(0).docs, lists.get(0).size);
+        int n = result.length;
+        for (int k = 1; k < lists.size() && n > 0; k++) {
+            Postings p = lists.get(k);
+            int i = 0, j = 0, m = 0;
+            while (i < n && j < p.size) {
+                if (result[i] < p.docs[j]) i++;
+                else if (result[i] > p.docs[j]) j++;
+                else { result[m++] = result[i]; i++; j++; }
+            }
+            n = m;
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    // --- 内部实现 ---
+
+    private static final class Postings {
+        int[] docs = new int[4];
+        int size;
+
+        void add(int doc) {
+            if (size > 0 && docs[size - 1] == doc) return;
+            if (size == docs.length) docs = Arrays.copyOf(docs, size * 2);
+            docs[size++] = doc;
+        }
+    }
+
+    private static int unigram(char c) { return c; }
+
+    // 2-gram 的高 16 位不为 0 (不会出现以分隔符开头的 2-gram)，不会与 1-gram 冲突
+    private static int bigram(char a, char b) { return (a << 16) | b; }
+
+    private void put(String donorId, String name) {
+        remove(donorId);
+        String text = (donorId + SEPARATOR + (name == null ? "" : name)).toLowerCase(Locale.ROOT);
+        int doc = docCount++;
+        if (doc == docIds.length) {
+            int n = Math.max(1024, docIds.length * 2);
+            docIds = Arrays.copyOf(docIds, n);
+            docTexts = Arrays.copyOf(docTexts, n);
+        }
+        docIds[doc] = donorId;
+        docTexts[doc] = text;
+        docById.put(donorId, doc);
+        index(doc, text);
+    }
+
+    private void index(int doc, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == SEPARATOR) continue;
+            postings.computeIfAbsent(unigram(c), k -> new Postings()).add(doc);
+            if (i + 1 < text.length() && text.charAt(i + 1) != SEPARATOR) {
+                postings.computeIfAbsent(bigram(c, text.charAt(i + 1)), k -> new Postings()).add(doc);
+            }
+        }
+    }
+
+    private void remove(String donorId) {
+        Integer doc = docById.remove(donorId);
+        if (doc == null) return;
+        docIds[doc] = null;
+        docTexts[doc] = null;
+        deadDocs++;
+    }
+
+    // 丢弃作废文档，重新编号并重建倒排表
+    private void compact() {
+        String[] oldIds = docIds, oldTexts = docTexts;
+        int oldCount = docCount;
+        reset();
+        for (int doc = 0; doc < oldCount; doc++) {
+            if (oldIds[doc] == null) continue;
+            int d = docCount++;
+            if (d == docIds.length) {
+                int n = Math.max(1024, docIds.length * 2);
+                docIds = Arrays.copyOf(docIds, n);
+                docTexts = Arrays.copyOf(docTexts, n);
+            }
+            docIds[d] = oldIds[doc];
+            docTexts[d] = oldTexts[doc];
+            docById.put(oldIds[doc], d);
+            index(d, oldTexts[doc]);
+        }
+    }
+
+    private void reset() {
+        docIds = new String[0];
+        docTexts = new String[0];
+        docCount = 0;
+        deadDocs = 0;
+        docById.clear();
+        postings.clear();
+    }
+}
@@ -1,190 +1,528 @@
 package com.example.bloodsystem.service;
 
 import com.example.bloodsystem.config.MatchConfig;
+import com.example.bloodsystem.config.ScoringRules;
 import com.example.bloodsystem.entity.Donor;
 import com.example.bloodsystem.repository.DonorRepository;
+import com.example.bloodsystem.util.HlaAlleleTable;
+import com.example.bloodsystem.util.HlaLocus;
 import com.example.bloodsystem.util.HlaUtils;
-import com.example.bloodsystem.util.HlaUtils.HlaInfo;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class DonorService {
 
     @Autowired private DonorRepository repository;
-    @Autowired private ImportService importService;
+    @Autowired private ImportJobService importJobService;
     @Autowired private MatchConfig matchConfig;
+    @Autowired private DonorIndex donorIndex;
+    @Autowired private MatchRanker matchRanker;
+    @Autowired private MatchCache matchCache;
+    @Autowired private DonorPurgeService purgeService;
+    @Autowired private DonorCounter donorCounter;
+    @Autowired private DonorSearchIndex searchIndex;
+    @Autowired private MatchMetrics metrics;
+    @Autowired private ApplicationEventPublisher eventPublisher;
     @PersistenceContext private EntityManager entityManager;
 
+    // limitResult 模式下返回的条数
+    @Value("${match.top-k:50}")
+    private int topK;
+
+    // 数据库扫描模式下，限制条数时是否先用 SQL 条件预筛选候选
+    @Value("${match.prefilter.enabled:true}")
+    private boolean prefilterEnabled;
+
+    // HLA 配型分辨率：group 只比较 Group (默认)，allele 按等位基因表比较 Group + Specific
+    @Value("${match.hla.resolution:group}")
+    private String hlaResolution;
+
+    // 回表加载实体的分块大小
+    private static final int HYDRATE_CHUNK = 500;
+
     // --- CRUD ---
     @Transactional
-    public void deleteDonor(String id) { try { repository.deleteById(id); repository.flush(); } catch (Exception e) { throw new RuntimeException("删除失败"); } }
-    @Transactional
-    public void deleteAllDonors() { try { repository.deleteAllInBatch(); repository.flush(); } catch (Exception e) { throw new RuntimeException("清空失败"); } }
-    public Page<Donor> getDonors(int page, int size, String keyword) {
-        Pageable pageable = PageRequest.of(page, size, Sort.by("donorId").descending());
-        if (keyword != null && !keyword.trim().isEmpty()) return repository.search(keyword.trim(), pageable);
-        return repository.findAll(pageable);
+    public void deleteDonor(String id) { try { repository.deleteById(id); repository.flush(); eventPublisher.publishEvent(DonorChangeEvent.deleted(List.of(id))); } catch (Exception e) { throw new RuntimeException("删除失败"); } }
+    // 清空改为后台任务 (TRUNCATE 或分块短事务删除)，不再用一个大事务锁住整张表
+    public PurgeJob deleteAllDonors() { return purgeService.submit(DonorPurgeService.Criteria.all()); }
+    public PurgeJob deleteDonors(DonorPurgeService.Criteria criteria) { return purgeService.submit(criteria); }
+    /**
+     * 游标分页：after 取比该 ID 小的下一页，before 取比该 ID 大的上一页，都为空时取第一页
+     * 每页多取一条用于判断是否还有更多，不执行 COUNT (总数由 DonorCounter 异步统计)
+     */
+    public DonorSlice getDonorSlice(String keyword, String after, String before, int size) {
+        String kw = (keyword == null || keyword.trim().isEmpty()) ? null : keyword.trim();
+        Pageable limit = PageRequest.of(0, size + 1);
+        boolean backward = before != null && !before.isEmpty() && (after == null || after.isEmpty());
+        if (kw != null) metrics.search(searchIndex.isReady());
+        if (kw != null && searchIndex.isReady()) return searchSlice(kw, after, before, size, backward);
+        List<Donor> rows;
+        if (backward) {
+            rows = kw == null ? repository.findPageBefore(before, limit) : repository.searchPageBefore(kw, before, limit);
+        } else if (after != null && !after.isEmpty()) {
+            rows = kw == null ? repository.findPageAfter(after, limit) : repository.searchPageAfter(kw, after, limit);
+        } else {
+            rows = kw == null ? repository.findFirstPage(limit) : repository.searchFirstPage(kw, limit);
+        }
+
+        return toSlice(rows, size, after, backward, donorCounter.count(kw));
+    }
+
+    // 关键词搜索走内存 n-gram 索引：索引给出这一页的 ID 和精确总数，再按 ID 回表
+    private DonorSlice searchSlice(String kw, String after, String before, int size, boolean backward) {
+        DonorSearchIndex.Page page = searchIndex.search(kw, after, before, size + 1);
+        Map<String, Donor> byId = repository.findAllById(page.ids()).stream()
+                .collect(Collectors.toMap(Donor::getDonorId, d -> d));
+        List<Donor> rows = new ArrayList<>(page.ids().size());
+        for (String id : page.ids()) {
+            Donor d = byId.get(id);
+            if (d != null) rows.add(d);
+        }
+        return toSlice(rows, size, after, backward, page.total());
+    }
+
+    private DonorSlice toSlice(List<Donor> rows, int size, String after, boolean backward, long total) {
+        boolean more = rows.size() > size;
+        List<Donor> donors = new ArrayList<>(more ? rows.subList(0, size) : rows);
+        if (backward) Collections.reverse(donors);
+
+        DonorSlice slice = new DonorSlice();
+        slice.setDonors(donors);
+        slice.setHasNext(backward ? true : more);
+        slice.setHasPrevious(backward ? more : (after != null && !after.isEmpty()));
+        if (!donors.isEmpty()) {
+            slice.setNextCursor(donors.get(donors.size() - 1).getDonorId());
+            slice.setPrevCursor(donors.get(0).getDonorId());
+        }
+        slice.setTotalCount(total);
+        return slice;
     }
     public Donor getDonorById(String id) { return repository.findById(id).orElse(null); }
     @Transactional
     public void saveDonor(Donor donor) {
         if (donor.getDonorId() == null || donor.getDonorId().isEmpty()) donor.setDonorId(UUID.randomUUID().toString().replace("-", "").substring(0, 10));
-        HlaUtils.fillSplitFields(donor);
+        boolean isNew = donor.getVersion() == null;
+        int hlaFailures = HlaUtils.fillSplitFields(donor);
+        if (hlaFailures > 0) metrics.hlaParseFailures("donor").increment(hlaFailures);
         repository.save(donor);
+        eventPublisher.publishEvent(isNew ? DonorChangeEvent.inserted(List.of(donor)) : DonorChangeEvent.updated(List.of(donor)));
+    }
+    public ImportResult importFromText(String textData) { return importJobService.importText(textData); }
+    public ImportResult importFromStream(InputStream in, Charset charset, ImportJobService.ImportListener listener) {
+        return importJobService.importStream(in, charset, listener);
     }
-    public ImportResult importFromText(String textData) { return importService.parseAndImportText(textData); }
 
     // --- 新版配型逻辑 ---
 
-    @SuppressWarnings("unchecked")
     public List<MatchResult> matchDonors(String patientBloodType,
                                          Map<String, String> pGts,
                                          String antibodyText, // 新增：抗体文本
                                          boolean limitResult) { // 新增：是否限制返回数量
+        MatchPlan plan = compile(patientBloodType, pGts, antibodyText);
+        int limit = limitResult ? topK : 0;
+
+        // 同一患者查询反复执行时直接返回缓存结果
+        MatchCache.Key key = matchCache.isEnabled() ? MatchCache.Key.of(plan, limit) : null;
+        if (key != null) {
+            List<MatchResult> cached = matchCache.get(key);
+            if (cached != null) {
+                metrics.cacheHit();
+                return cached;
+            }
+        }
+        long generation = matchCache.generation();
+
+        List<MatchResult> results = new ArrayList<>();
+        match(plan, limit, results::add);
+        if (key != null) matchCache.put(key, results, generation);
+        return results;
+    }
 
-        // 1. 解析患者数据
-        Set<String> selectedHpas = new HashSet<>();
-        List<String> validHpas = matchConfig.getAllHpas();
+    /**
+     * 配型主流程：结果按分数降序逐条交给 sink，不在内存中攒完整结果列表
+     * @param limit 返回前 limit 条；<= 0 表示返回全部
+     */
+    public void matchDonors(String patientBloodType,
+                            Map<String, String> pGts,
+                            String antibodyText,
+                            int limit,
+                            Consumer<MatchResult> sink) {
+        // 1. 解析患者数据，编译为查询计划
+        match(compile(patientBloodType, pGts, antibodyText), limit, sink);
+    }
+
+    private MatchPlan compile(String bloodType, Map<String, String> pGts, String antibodyText) {
+        MatchPlan plan = MatchPlan.compile(bloodType, pGts, antibodyText, matchConfig, "allele".equalsIgnoreCase(hlaResolution));
+        if (plan.hlaParseFailures > 0) metrics.hlaParseFailures("patient").increment(plan.hlaParseFailures);
+        return plan;
+    }
+
+    /**
+     * 批量配型：所有患者共用一次供者遍历，每个供者只读取、解码一次，再分别交给各患者的查询计划打分，
+     * 每个患者各自保留前 limit 名。返回顺序与 patients 一致，单个患者的结果与 matchDonors 相同。
+     * patients 的 genotypes 需已转换为 HLA-A1 / HPA-1 形式的位点名。
+     */
+    public List<List<MatchResult>> matchDonorsBatch(List<BatchMatchRequest.Patient> patients, int limit) {
+        int k = limit > 0 ? limit : topK;
+        List<List<MatchResult>> results = new ArrayList<>(Collections.nCopies(patients.size(), null));
+
+        // 已有缓存的患者直接取缓存，其余的进入同一次遍历
+        List<Integer> pending = new ArrayList<>();
+        List<MatchPlan> plans = new ArrayList<>();
+        List<MatchCache.Key> keys = new ArrayList<>();
+        for (int i = 0; i < patients.size(); i++) {
+            BatchMatchRequest.Patient p = patients.get(i);
+            MatchPlan plan = compile(p.getBloodType(), p.getGenotypes(), p.getAntibodies());
+            MatchCache.Key key = matchCache.isEnabled() ? MatchCache.Key.of(plan, k) : null;
+            List<MatchResult> cached = key == null ? null : matchCache.get(key);
+            if (cached != null) {
+                metrics.cacheHit();
+                results.set(i, cached);
+            } else {
+                pending.add(i);
+                plans.add(plan);
+                keys.add(key);
+            }
+        }
+        if (pending.isEmpty()) return results;
+        long generation = matchCache.generation();
+
+        MatchPlan[] batch = plans.toArray(new MatchPlan[0]);
+        List<List<MatchResult>> computed;
+        if (donorIndex.isReady()) {
+            metrics.indexPath(batch.length);
+            computed = batchFromIndex(batch, k);
+        } else {
+            metrics.scanPath(batch.length);
+            computed = batchFromScan(batch, k);
+        }
+        for (int j = 0; j < pending.size(); j++) {
+            metrics.results(computed.get(j).size());
+            results.set(pending.get(j), computed.get(j));
+            if (keys.get(j) != null) matchCache.put(keys.get(j), computed.get(j), generation);
+        }
+        return results;
+    }
+
+    private List<List<MatchResult>> batchFromIndex(MatchPlan[] plans, int limit) {
+        String[][] rankedIds = donorIndex.read(index -> {
+            long rankStart = System.nanoTime();
+            metrics.candidates(index.size());
+            boolean[][] bloodOk = new boolean[plans.length][];
+            for (int p = 0; p < plans.length; p++) bloodOk[p] = index.bloodTypeFilter(plans[p].bloodType);
+            int[][] ranked = matchRanker.rankBatch(index.capacity(), plans.length, (slot, out) -> {
+                if (!index.isLive(slot)) return false;
+                int bt = index.bloodType(slot);
+                for (int p = 0; p < plans.length; p++) {
+                    out[p] = (bloodOk[p] == null || bloodOk[p][bt]) ? plans[p].score(index, slot) : MatchRanker.REJECT;
+                }
+                return true;
+            }, limit);
+            String[][] ids = new String[plans.length][];
+            for (int p = 0; p < plans.length; p++) {
+                ids[p] = new String[ranked[p].length];
+                for (int i = 0; i < ranked[p].length; i++) ids[p][i] = index.donorId(ranked[p][i]);
+            }
+            metrics.rank(System.nanoTime() - rankStart);
+            return ids;
+        });
+
+        // 各患者的 Top-K 多有重叠，去重后统一分块回表
+        Set<String> union = new LinkedHashSet<>();
+        for (String[] ids : rankedIds) union.addAll(Arrays.asList(ids));
+        List<String> all = new ArrayList<>(union);
+        Map<String, Donor> byId = new HashMap<>(all.size() * 2);
+        long hydrateStart = System.nanoTime();
+        for (int from = 0; from < all.size(); from += HYDRATE_CHUNK) {
+            repository.findAllById(all.subList(from, Math.min(from + HYDRATE_CHUNK, all.size())))
+                    .forEach(d -> byId.put(d.getDonorId(), d));
+        }
+        metrics.hydrate(System.nanoTime() - hydrateStart);
+
+        long detailStart = System.nanoTime();
+        List<List<MatchResult>> results = new ArrayList<>(plans.length);
+        for (int p = 0; p < plans.length; p++) {
+            List<MatchResult> list = new ArrayList<>(rankedIds[p].length);
+            for (String id : rankedIds[p]) {
+                Donor d = byId.get(id);
+                if (d != null) list.add(calculateScore(d, plans[p])); // 打分后被并发删除的跳过
+            }
+            results.add(list);
+        }
+        metrics.detail(System.nanoTime() - detailStart);
+        return results;
+    }
 
-        if (pGts != null) {
-            pGts.forEach((k, v) -> {
-                if (v != null && !v.isEmpty() && validHpas.contains(k)) selectedHpas.add(k);
-            });
+    // 索引未就绪：整表只加载一次，先把每个供者解码成原始类型，再按索引模式同样的方式批量打分
+    private List<List<MatchResult>> batchFromScan(MatchPlan[] plans, int limit) {
+        long queryStart = System.nanoTime();
+        List<Donor> candidates = runCandidateQuery("SELECT * FROM donors", Map.of());
+        metrics.query(System.nanoTime() - queryStart);
+        int n = candidates.size();
+        metrics.candidates(n);
+        List<String> loci = matchConfig.getAllHpas();
+        String[] hpaValues = new String[loci.size()];
+        int[] groups = new int[n * DonorIndex.HLA_SLOTS];
+        int[] alleles = new int[n * DonorIndex.HLA_SLOTS];
+        int[] hpa = new int[n];
+        int[] bloodCodes = new int[n];
+        Map<String, Integer> bloodTypes = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Donor d = candidates.get(i);
+            for (int a = 0; a < DonorIndex.HLA_SLOTS; a++) {
+                groups[i * DonorIndex.HLA_SLOTS + a] = groupOrNone(d.getHlaGroup(a));
+                alleles[i * DonorIndex.HLA_SLOTS + a] = plans[0].donorAllele(d, a);
+            }
+            for (int l = 0; l < hpaValues.length; l++) hpaValues[l] = d.getGenotype(loci.get(l));
+            hpa[i] = DonorIndex.encodeHpa(hpaValues);
+            String bt = d.getBloodType() == null ? "" : d.getBloodType().trim().toUpperCase(Locale.ROOT);
+            bloodCodes[i] = bloodTypes.computeIfAbsent(bt, x -> bloodTypes.size());
         }
 
-        // 解析患者 HLA (仅需 Group)
-        HlaInfo tA1 = HlaUtils.parseHla(pGts.get("HLA-A1"));
-        HlaInfo tA2 = HlaUtils.parseHla(pGts.get("HLA-A2"));
-        HlaInfo tB1 = HlaUtils.parseHla(pGts.get("HLA-B1"));
-        HlaInfo tB2 = HlaUtils.parseHla(pGts.get("HLA-B2"));
+        // 与 SQL 的 blood_type = ? 一致：忽略大小写和首尾空格，患者未填血型时不限
+        boolean[][] bloodOk = new boolean[plans.length][];
+        for (int p = 0; p < plans.length; p++) {
+            String want = plans[p].bloodType;
+            if (want == null || want.isEmpty()) continue;
+            bloodOk[p] = new boolean[bloodTypes.size()];
+            Integer code = bloodTypes.get(want.trim().toUpperCase(Locale.ROOT));
+            if (code != null) bloodOk[p][code] = true;
+        }
 
-        // 解析抗体列表 (得到被禁止的 Group ID 列表)
-        List<Integer> bannedGroups = HlaUtils.parseAntibodies(antibodyText);
+        long rankStart = System.nanoTime();
+        int[][] ranked = matchRanker.rankBatch(n, plans.length, (i, out) -> {
+            for (int p = 0; p < plans.length; p++) {
+                out[p] = (bloodOk[p] == null || bloodOk[p][bloodCodes[i]])
+                        ? plans[p].score(groups, alleles, i * DonorIndex.HLA_SLOTS, hpa[i])
+                        : MatchRanker.REJECT;
+            }
+            return true;
+        }, limit);
+        metrics.rank(System.nanoTime() - rankStart);
+
+        long detailStart = System.nanoTime();
+        List<List<MatchResult>> results = new ArrayList<>(plans.length);
+        for (int p = 0; p < plans.length; p++) {
+            List<MatchResult> list = new ArrayList<>(ranked[p].length);
+            for (int ord : ranked[p]) list.add(calculateScore(candidates.get(ord), plans[p]));
+            results.add(list);
+        }
+        metrics.detail(System.nanoTime() - detailStart);
+        return results;
+    }
 
-        // 2. 构建查询 (全库扫描，不再限制 SQL 数量，因为需要处理所有人的抗体排斥)
-        StringBuilder sql = new StringBuilder("SELECT * FROM donors WHERE 1=1 ");
-        Map<String, Object> params = new HashMap<>();
+    private static int groupOrNone(Integer g) { return g == null ? DonorIndex.NO_GROUP : g; }
 
-        if (patientBloodType != null && !patientBloodType.isEmpty()) {
-            sql.append(" AND blood_type = :bloodType ");
-            params.put("bloodType", patientBloodType);
+    private void match(MatchPlan plan, int limit, Consumer<MatchResult> sink) {
+        if (donorIndex.isReady()) {
+            metrics.indexPath(1);
+            matchFromIndex(plan, limit, sink);
+            return;
+        }
+        metrics.scanPath(1);
+
+        // 2. 查询候选 (限制条数时先尝试 SQL 预筛选，不足时退回全表扫描)
+        long queryStart = System.nanoTime();
+        List<Donor> candidates = loadCandidates(plan, limit);
+        metrics.query(System.nanoTime() - queryStart);
+        metrics.candidates(candidates.size());
+
+        // 3. 只计算总分并排名 (负分自然在最后)，详情只为最终返回的供者生成
+        long rankStart = System.nanoTime();
+        int[] ranked = matchRanker.rank(candidates.size(), i -> true, i -> plan.score(candidates.get(i)), limit);
+        metrics.rank(System.nanoTime() - rankStart);
+        long detailNanos = 0;
+        for (int ord : ranked) {
+            long t = System.nanoTime();
+            MatchResult mr = calculateScore(candidates.get(ord), plan);
+            detailNanos += System.nanoTime() - t;
+            sink.accept(mr);
         }
+        metrics.detail(detailNanos);
+        metrics.results(ranked.length);
+    }
 
-        // HPA 筛选逻辑保持：如果选择了 HPA 且非严格模式，这里不卡死，依靠后续打分。
-        // 为了性能，如果全库非常大，这里应该加索引筛选。考虑到目前逻辑是全显示，暂不加 WHERE 限制 HLA。
+    /**
+     * 数据库扫描模式下加载候选供者
+     * 只需要前 limit 名时，把选择性高的条件下推到 SQL，利用 HLA Group 索引缩小候选集：
+     * - 第一级：未命中抗体，且至少一个 HLA Group 与患者相同
+     * - 第二级：未命中抗体 (总分 >= 0)
+     * 预筛选集合之外的供者分数一定严格低于集合内的供者 (默认规则下 HPA 最多 45 分，Group 相同至少 50 分，抗体冲突 -1000)，
+     * 所以只要某一级返回的行数 >= limit，前 limit 名就与全表扫描一致；否则退到下一级，最后全表扫描。
+     * 评分规则改变后某一级不再满足这个条件时 (见 MatchPlan.conflictTierExact / matchTierExact) 跳过该级。
+     */
+    private List<Donor> loadCandidates(MatchPlan plan, int limit) {
+        String base = "SELECT * FROM donors WHERE 1=1 ";
+        Map<String, Object> params = new HashMap<>();
 
-        Query nativeQuery = entityManager.createNativeQuery(sql.toString(), Donor.class);
-        params.forEach(nativeQuery::setParameter);
+        if (plan.bloodType != null && !plan.bloodType.isEmpty()) {
+            base += " AND blood_type = :bloodType ";
+            params.put("bloodType", plan.bloodType);
+        }
 
-        List<Donor> candidates = nativeQuery.getResultList();
-        List<MatchResult> results = new ArrayList<>();
+        if (limit > 0 && prefilterEnabled) {
+            // 列名来自 HlaLocus，不是用户输入
+            StringBuilder noConflict = new StringBuilder();
+            List<String> anyMatch = new ArrayList<>();
+            for (HlaLocus locus : HlaLocus.values()) {
+                String c1 = HlaLocus.column(locus.allele(0)) + "_group", c2 = HlaLocus.column(locus.allele(1)) + "_group";
+                if (locus.antibodyScreened() && !plan.bannedGroups.isEmpty()) {
+                    noConflict.append(" AND (").append(c1).append(" IS NULL OR ").append(c1).append(" NOT IN (:banned))")
+                            .append(" AND (").append(c2).append(" IS NULL OR ").append(c2).append(" NOT IN (:banned))");
+                    params.put("banned", plan.bannedGroups);
+                }
+                List<Integer> groups = plan.patientGroups(locus.ordinal());
+                if (!groups.isEmpty()) {
+                    String name = "groups" + locus.name();
+                    anyMatch.add(c1 + " IN (:" + name + ") OR " + c2 + " IN (:" + name + ")");
+                    params.put(name, groups);
+                }
+            }
 
-        // 3. 遍历每一个供者进行打分
-        for (Donor d : candidates) {
-            MatchResult mr = calculateScore(d, pGts, selectedHpas,
-                    tA1, tA2, tB1, tB2,
-                    bannedGroups);
-            if (mr != null) {
-                results.add(mr);
+            if (!anyMatch.isEmpty() && plan.matchTierExact) {
+                List<Donor> rows = runCandidateQuery(base + noConflict + " AND (" + String.join(" OR ", anyMatch) + ")", params);
+                if (rows.size() >= limit) return rows;
+            }
+            if (!noConflict.isEmpty() && plan.conflictTierExact) {
+                List<Donor> rows = runCandidateQuery(base + noConflict, params);
+                if (rows.size() >= limit) return rows;
             }
         }
 
-        // 4. 排序：分数高的在前 (负分自然在最后)
-        results.sort((r1, r2) -> Double.compare(r2.score, r1.score));
+        // HPA 只参与打分，不在 SQL 中筛选
+        return runCandidateQuery(base, params);
+    }
 
-        // 5. 根据参数返回 全部 或 前50
-        if (limitResult && results.size() > 50) {
-            return results.subList(0, 50);
+    @SuppressWarnings("unchecked")
+    private List<Donor> runCandidateQuery(String sql, Map<String, Object> params) {
+        Query nativeQuery = entityManager.createNativeQuery(sql, Donor.class);
+        params.forEach((k, v) -> {
+            if (sql.contains(":" + k)) nativeQuery.setParameter(k, v);
+        });
+        return nativeQuery.getResultList();
+    }
+
+    /**
+     * 基于内存列式索引的配型：在原始类型数组上打分排名，只为最终返回的供者回表加载实体并补全详情
+     */
+    private void matchFromIndex(MatchPlan plan, int limit, Consumer<MatchResult> sink) {
+        // 持有读锁期间完成打分、排名，并把 slot 翻译成 donorId (slot 在锁外可能被复用)
+        String[] rankedIds = donorIndex.read(index -> {
+            long rankStart = System.nanoTime();
+            metrics.candidates(index.size());
+            boolean[] bloodOk = index.bloodTypeFilter(plan.bloodType);
+            int[] ranked = matchRanker.rank(index.capacity(),
+                    slot -> index.isLive(slot) && (bloodOk == null || bloodOk[index.bloodType(slot)]),
+                    slot -> plan.score(index, slot), limit);
+            String[] ids = new String[ranked.length];
+            for (int i = 0; i < ranked.length; i++) ids[i] = index.donorId(ranked[i]);
+            metrics.rank(System.nanoTime() - rankStart);
+            return ids;
+        });
+
+        // 分块回表加载实体，补全匹配详情后依次输出 (sink 的耗时不计入各阶段)
+        long hydrateNanos = 0, detailNanos = 0;
+        int returned = 0;
+        for (int from = 0; from < rankedIds.length; from += HYDRATE_CHUNK) {
+            List<String> chunk = Arrays.asList(rankedIds).subList(from, Math.min(from + HYDRATE_CHUNK, rankedIds.length));
+            Map<String, Donor> byId = new HashMap<>(chunk.size() * 2);
+            long hydrateStart = System.nanoTime();
+            repository.findAllById(chunk).forEach(d -> byId.put(d.getDonorId(), d));
+            hydrateNanos += System.nanoTime() - hydrateStart;
+            for (String id : chunk) {
+                Donor d = byId.get(id);
+                if (d == null) continue; // 打分后被并发删除
+                long t = System.nanoTime();
+                MatchResult mr = calculateScore(d, plan);
+                detailNanos += System.nanoTime() - t;
+                sink.accept(mr);
+                returned++;
+            }
         }
-        return results;
+        metrics.hydrate(hydrateNanos);
+        metrics.detail(detailNanos);
+        metrics.results(returned);
     }
 
-    private MatchResult calculateScore(Donor d, Map<String, String> pGts, Set<String> selectedHpaLoci,
-                                       HlaInfo tA1, HlaInfo tA2, HlaInfo tB1, HlaInfo tB2,
-                                       List<Integer> bannedGroups) {
+    /**
+     * 为最终返回的供者计算完整匹配详情 (分数与 MatchPlan.score 一致)
+     */
+    MatchResult calculateScore(Donor d, MatchPlan plan) {
+        Map<String, String> pGts = plan.pGts;
+        Set<String> selectedHpaLoci = plan.selectedHpas;
 
+        ScoringRules rules = plan.rules; // 与打分时同一版规则
         MatchResult mr = new MatchResult(d);
         double totalScore = 0.0;
 
         // --- 1. 抗体检测 (Antibody Check) ---
-        // 规则：无论用户输入什么 HLA，都要检查供者 4 个位点是否命中抗体
-        // 命中一个扣 1000 分
-        checkConflict(d.getHlaA1Group(), "HLA-A1", bannedGroups, mr);
-        checkConflict(d.getHlaA2Group(), "HLA-A2", bannedGroups, mr);
-        checkConflict(d.getHlaB1Group(), "HLA-B1", bannedGroups, mr);
-        checkConflict(d.getHlaB2Group(), "HLA-B2", bannedGroups, mr);
+        // 规则：无论用户输入什么 HLA，都要检查供者 A、B 位点的每条链是否命中抗体
+        // 命中一个扣 antibody.conflict-penalty 分 (默认 1000)
+        for (int a = 0; a < HlaLocus.ALLELES; a++) {
+            if (HlaLocus.ofAllele(a).antibodyScreened()) checkConflict(d.getHlaGroup(a), HlaLocus.key(a), plan, mr);
+        }
 
         // --- 2. HLA 适配 (HLA Matching) ---
-        // 规则：只检查第一个数字 (Group)。匹配 +100 分。
-        // 计算匹配的条数：0-4 条 -> 对应等级 D, C, B, A
-
-        int matchCount = 0;
-
-        // A 位点匹配逻辑：
-        // 患者 A1 能匹配 供者 A1 或 A2 (单向，找最大匹配数)
-        // 这里的逻辑需要细化：如果患者有 A1, A2。供者有 A1, A2。
-        // 这是一个最大二分匹配问题，但通常简化为：
-        // 尝试 顺向 (P1-D1, P2-D2) 和 交叉 (P1-D2, P2-D1) 哪种匹配数多
+        // 规则：Group 水平只检查第一个数字 (Group)，匹配 +hla.allele-points 分 (默认 100)；
+        // 等位基因水平下等位基因匹配 (或同一等价组) +hla.allele-points 分，仅 Group 相同 +hla.group-points 分 (默认 50)。
+        // 每个位点：尝试 顺向 (P1-D1, P2-D2) 和 交叉 (P1-D2, P2-D1) 哪种得分高
 
-        int matchesA = countBestMatches(tA1, tA2, d.getHlaA1Group(), d.getHlaA2Group(), mr, "HLA-A");
-        int matchesB = countBestMatches(tB1, tB2, d.getHlaB1Group(), d.getHlaB2Group(), mr, "HLA-B");
-
-        matchCount = matchesA + matchesB;
-        totalScore += (matchCount * 100.0);
+        for (HlaLocus locus : HlaLocus.values()) {
+            totalScore += bestPairing(d, plan, mr, locus);
+        }
+        int matchCount = mr.highlightedAlleles.size(); // 完全匹配的供者链都已高亮
 
-        // 设置等级
-        if (matchCount == 4) mr.grade = "A";
-        else if (matchCount == 3) mr.grade = "B";
-        else if (matchCount == 1 || matchCount == 2) mr.grade = "C";
-        else mr.grade = "D";
+        // 设置等级 (按完全匹配的条数占患者已输入条数的比例，阈值见 grade.a / grade.b / grade.c)
+        mr.grade = rules.grade(matchCount, plan.patientAlleles);
 
         // --- 3. HPA 适配 (HPA Matching) ---
-        // 规则：适配 +5，兼容 +2，不适配 0
+        // 规则：适配 +5，兼容 +2，不适配 0 (默认值，乘以位点权重；关键位点不适配时另扣分)
         // 同时计算 HPA 匹配率 (Rate) 用于进度条显示
 
         double hpaScore = 0.0;
         double currentHpaWeight = 0.0;
         double maxHpaWeight = 0.0; // 用于计算百分比
 
-        for (String locus : matchConfig.getAllHpas()) {
+        List<String> allHpas = matchConfig.getAllHpas();
+        for (int i = 0; i < allHpas.size(); i++) {
+            String locus = allHpas.get(i);
             if (!selectedHpaLoci.contains(locus)) continue;
 
             String pVal = pGts.get(locus);
             String dVal = d.getGenotype(locus);
 
-            maxHpaWeight += 5.0; // 假设满分是匹配
+            maxHpaWeight += rules.hpaFullPoints(i); // 满分是匹配
 
             if (dVal == null || dVal.isEmpty()) {
                 mr.unknownLoci.add(locus);
             } else {
-                int pts = matchConfig.getScore(pVal, dVal); // 2=匹配, 1=兼容, 0=不匹配
-                if (pts == 2) {
-                    mr.matchedLoci.add(locus);
-                    hpaScore += 5.0;
-                    currentHpaWeight += 5.0;
-                } else if (pts == 1) {
-                    mr.compatibleLoci.add(locus);
-                    hpaScore += 2.0;
-                    currentHpaWeight += 2.0;
-                } else {
-                    mr.mismatchedLoci.add(locus);
-                    // 不扣分
-                }
+                int compat = matchConfig.getScore(pVal, dVal); // 2=匹配, 1=兼容, 0=不匹配
+                int pts = rules.hpaPoints(i, compat);
+                hpaScore += pts;
+                currentHpaWeight += Math.max(pts, 0);
+                if (compat == ScoringRules.HPA_MATCH) mr.matchedLoci.add(locus);
+                else if (compat == ScoringRules.HPA_COMPATIBLE) mr.compatibleLoci.add(locus);
+                else mr.mismatchedLoci.add(locus);
             }
         }
 
         totalScore += hpaScore;
         // 如果有抗体冲突扣分，总分会变成负数
-        totalScore -= (mr.conflictCount * 1000.0);
+        totalScore -= (double) mr.conflictCount * rules.conflictPenalty();
 
         mr.score = totalScore;
         mr.rate = (maxHpaWeight > 0) ? (currentHpaWeight / maxHpaWeight) * 100.0 : 0;
@@ -193,52 +531,37 @@ public class DonorService {
         return mr;
     }
 
-    private void checkConflict(Integer donorGroup, String label, List<Integer> bannedGroups, MatchResult mr) {
+    private void checkConflict(Integer donorGroup, String label, MatchPlan plan, MatchResult mr) {
         if (donorGroup == null) return;
-        if (bannedGroups.contains(donorGroup)) {
+        if (plan.isBanned(donorGroup)) {
             mr.conflictCount++;
             mr.conflictReasons.add(label + " (Group " + donorGroup + ") 包含排斥抗原");
         }
     }
 
     /**
-     * 计算某一位点 (A 或 B) 的最佳匹配数 (0, 1, 2)
-     * 同时处理高亮标记
+     * 计算某一位点的最佳配对得分，同时处理高亮标记
      */
-    private int countBestMatches(HlaInfo p1, HlaInfo p2, Integer d1, Integer d2, MatchResult mr, String type) {
-        // 如果患者没输该位点，直接返回0
-        if (p1 == null && p2 == null) return 0;
-
-        // 辅助函数：单次匹配 (只比对 Group)
-        // 供者 d1, d2 可能为 null
-
-        // 方案 1: 顺向 P1-D1, P2-D2
-        boolean m1_1 = isMatch(p1, d1);
-        boolean m1_2 = isMatch(p2, d2);
-        int score1 = (m1_1 ? 1 : 0) + (m1_2 ? 1 : 0);
-
-        // 方案 2: 交叉 P1-D2, P2-D1
-        boolean m2_1 = isMatch(p1, d2);
-        boolean m2_2 = isMatch(p2, d1);
-        int score2 = (m2_1 ? 1 : 0) + (m2_2 ? 1 : 0);
-
-        // 选最大的，并记录高亮
-        if (score1 >= score2) {
-            if (m1_1) mr.highlightedAlleles.add(type + "1"); // 供者第1条链高亮
-            if (m1_2) mr.highlightedAlleles.add(type + "2"); // 供者第2条链高亮
-            if (score1 > 0) mr.matchedLoci.add(type);
-            return score1;
-        } else {
-            if (m2_2) mr.highlightedAlleles.add(type + "1"); // P2 配 D1 -> D1 高亮
-            if (m2_1) mr.highlightedAlleles.add(type + "2"); // P1 配 D2 -> D2 高亮
-            if (score2 > 0) mr.matchedLoci.add(type);
-            return score2;
+    private int bestPairing(Donor d, MatchPlan plan, MatchResult mr, HlaLocus locus) {
+        int a1 = locus.allele(0), a2 = locus.allele(1);
+        int g1 = groupOrNone(d.getHlaGroup(a1)), g2 = groupOrNone(d.getHlaGroup(a2));
+        int d1 = plan.donorAllele(d, a1), d2 = plan.donorAllele(d, a2);
+
+        // 方案 1: 顺向 P1-D1, P2-D2；方案 2: 交叉 P2-D1, P1-D2
+        int s1 = plan.level(a1, g1, d1), s2 = plan.level(a2, g2, d2);
+        int c1 = plan.level(a2, g1, d1), c2 = plan.level(a1, g2, d2);
+        if (plan.levelPoints(c1) + plan.levelPoints(c2) > plan.levelPoints(s1) + plan.levelPoints(s2)) {
+            s1 = c1;
+            s2 = c2;
         }
-    }
 
-    private boolean isMatch(HlaInfo p, Integer dGroup) {
-        if (p == null || dGroup == null) return false;
-        return p.group == dGroup;
+        // 选得分高的 (相同时取顺向)，完全匹配的供者链高亮
+        boolean full1 = s1 == HlaAlleleTable.SAME_ALLELE, full2 = s2 == HlaAlleleTable.SAME_ALLELE;
+        if (full1) mr.highlightedAlleles.add(HlaLocus.key(a1));
+        if (full2) mr.highlightedAlleles.add(HlaLocus.key(a2));
+        if (full1 || full2) mr.matchedLoci.add(locus.label());
+        else if (s1 != HlaAlleleTable.MISMATCH || s2 != HlaAlleleTable.MISMATCH) mr.compatibleLoci.add(locus.label()); // 仅 Group 相同
+        return plan.levelPoints(s1) + plan.levelPoints(s2);
     }
 
     public static class MatchResult {
@@ -253,7 +576,7 @@ public class DonorService {
         public List<String> mismatchedLoci = new ArrayList<>();
         public List<String> unknownLoci = new ArrayList<>();
 
-        // 高亮 (HLA-A1, HLA-A2, HLA-B1, HLA-B2)
+        // 高亮 (HLA-A1, HLA-A2, ... HLA-DQ2，见 HlaLocus.key)
         public Set<String> highlightedAlleles = new HashSet<>();
 
         // 冲突详情
@@ -0,0 +1,21 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.Donor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 供者列表的一页 (游标分页)
+ * 列表按 donorId 降序；nextCursor 取下一页 (更小的 ID)，prevCursor 取上一页 (更大的 ID)。
+ */
+@Data
+public class DonorSlice {
+    private List<Donor> donors;
+    private String nextCursor;
+    private String prevCursor;
+    private boolean hasNext;
+    private boolean hasPrevious;
+    // 总数：缓存值，可能略有滞后；-1 表示正在统计
+    private long totalCount;
+}
@@ -0,0 +1,109 @@
+package com.example.bloodsystem.service;
+
+import java.util.*;
+
+/**
+ * 堆内列存储：每列一个原始类型数组，下标即序号
+ */
+final class HeapDonorColumns implements DonorColumns {
+
+    private String[] ids = new String[0];
+    private byte[] bloodTypes = new byte[0];
+    private int[] hlaGroups = new int[0];
+    private short[] hlaAlleles = new short[0];
+    private int[] hpaCodes = new int[0];
+    private int[] versions = new int[0];
+    private int capacity = 0;
+    private int size = 0;
+    private final Map<String, Integer> ordById = new HashMap<>();
+    private final Deque<Integer> freeOrds = new ArrayDeque<>();
+
+    @Override public int capacity() { return capacity; }
+    @Override public int size() { return size; }
+
+    @Override
+    public int find(String donorId) {
+        Integer ord = ordById.get(donorId);
+        return ord == null ? -1 : ord;
+    }
+
+    @Override
+    public int allocate(String donorId) {
+        int ord = freeOrds.isEmpty() ? capacity++ : freeOrds.pop();
+        ensureCapacity(capacity);
+        ordById.put(donorId, ord);
+        ids[ord] = donorId;
+        size++;
+        return ord;
+    }
+
+    @Override
+    public void set(int ord, int bloodCode, int[] hla, int[] alleles, int hpa, int version) {
+        bloodTypes[ord] = (byte) bloodCode;
+        System.arraycopy(hla, 0, hlaGroups, ord * DonorIndex.HLA_SLOTS, DonorIndex.HLA_SLOTS);
+        for (int i = 0; i < DonorIndex.HLA_SLOTS; i++) hlaAlleles[ord * DonorIndex.HLA_SLOTS + i] = (short) alleles[i];
+        hpaCodes[ord] = hpa;
+        versions[ord] = version;
+    }
+
+    @Override
+    public void release(int ord) {
+        ordById.remove(ids[ord]);
+        ids[ord] = null;
+        freeOrds.push(ord);
+        size--;
+    }
+
+    @Override public boolean isLive(int ord) { return ids[ord] != null; }
+    @Override public String donorId(int ord) { return ids[ord]; }
+    @Override public int bloodType(int ord) { return bloodTypes[ord] & 0xFF; }
+    @Override public int hlaGroup(int ord, int i) { return hlaGroups[ord * DonorIndex.HLA_SLOTS + i]; }
+    @Override public int hlaAllele(int ord, int i) { return hlaAlleles[ord * DonorIndex.HLA_SLOTS + i]; }
+    @Override public int hpaCodes(int ord) { return hpaCodes[ord]; }
+    @Override public int version(int ord) { return versions[ord]; }
+
+    @Override
+    public void ensureCapacity(int needed) {
+        if (needed <= ids.length) return;
+        int n = Math.max(needed, Math.max(1024, ids.length + (ids.length >> 1)));
+        ids = Arrays.copyOf(ids, n);
+        bloodTypes = Arrays.copyOf(bloodTypes, n);
+        hlaGroups = Arrays.copyOf(hlaGroups, n * DonorIndex.HLA_SLOTS);
+        hlaAlleles = Arrays.copyOf(hlaAlleles, n * DonorIndex.HLA_SLOTS);
+        hpaCodes = Arrays.copyOf(hpaCodes, n);
+        versions = Arrays.copyOf(versions, n);
+    }
+
+    /**
+     * 列数据的副本，只用于顺序读取 (写快照时在锁外读)，不能再写入或按 ID 查找
+     */
+    HeapDonorColumns copyForRead() {
+        HeapDonorColumns c = new HeapDonorColumns();
+        c.ids = Arrays.copyOf(ids, capacity);
+        c.bloodTypes = Arrays.copyOf(bloodTypes, capacity);
+        c.hlaGroups = Arrays.copyOf(hlaGroups, capacity * DonorIndex.HLA_SLOTS);
+        c.hlaAlleles = Arrays.copyOf(hlaAlleles, capacity * DonorIndex.HLA_SLOTS);
+        c.hpaCodes = Arrays.copyOf(hpaCodes, capacity);
+        c.versions = Arrays.copyOf(versions, capacity);
+        c.capacity = capacity;
+        c.size = size;
+        return c;
+    }
+
+    @Override
+    public void clear() {
+        ids = new String[0];
+        bloodTypes = new byte[0];
+        hlaGroups = new int[0];
+        hlaAlleles = new short[0];
+        hpaCodes = new int[0];
+        versions = new int[0];
+        capacity = 0;
+        size = 0;
+        ordById.clear();
+        freeOrds.clear();
+    }
+
+    @Override
+    public void close() {}
+}
@@ -0,0 +1,96 @@
+package com.example.bloodsystem.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 后台导入任务的状态与进度
+ * 计数器由流水线各阶段线程更新，状态查询可随时读取快照。
+ */
+public class ImportJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    private final String id;
+    private final String source;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long startedAt, finishedAt;
+    private volatile Status status = Status.QUEUED;
+    private volatile boolean cancelRequested;
+    private volatile String failure;
+
+    final AtomicLong linesRead = new AtomicLong();
+    final AtomicLong rowsParsed = new AtomicLong();
+    final AtomicLong rowsCommitted = new AtomicLong();
+    final AtomicLong rowsFailed = new AtomicLong();
+
+    // 只由写入线程修改，读取时同样对其加锁
+    final ImportResult result = new ImportResult();
+    private final CountDownLatch done = new CountDownLatch(1);
+    // 同步导入时的进度回调，可为 null
+    volatile ImportJobService.ImportListener listener;
+
+    ImportJob(String id, String source) {
+        this.id = id;
+        this.source = source;
+    }
+
+    public String getId() { return id; }
+    public Status getStatus() { return status; }
+    public boolean isCancelRequested() { return cancelRequested; }
+    public boolean isFinished() { return done.getCount() == 0; }
+
+    void cancel() { cancelRequested = true; }
+
+    void markStarted() {
+        startedAt = System.currentTimeMillis();
+        status = Status.RUNNING;
+    }
+
+    void markFailed(String message) {
+        if (failure == null) failure = message;
+    }
+
+    void markFinished() {
+        finishedAt = System.currentTimeMillis();
+        status = failure != null ? Status.FAILED : cancelRequested ? Status.CANCELLED : Status.COMPLETED;
+        done.countDown();
+    }
+
+    /**
+     * 等待任务结束
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    /**
+     * 当前进度快照 (供 /api/import/{jobId} 返回)
+     */
+    public Map<String, Object> snapshot() {
+        long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+        long elapsed = startedAt > 0 ? end - startedAt : 0;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jobId", id);
+        m.put("source", source);
+        m.put("status", status);
+        m.put("createdAt", createdAt);
+        m.put("elapsedMs", elapsed);
+        m.put("linesRead", linesRead.get());
+        m.put("rowsParsed", rowsParsed.get());
+        m.put("rowsCommitted", rowsCommitted.get());
+        m.put("rowsFailed", rowsFailed.get());
+        m.put("rowsPerSecond", elapsed == 0 ? 0 : rowsCommitted.get() * 1000 / elapsed);
+        if (failure != null) m.put("failure", failure);
+        synchronized (result) {
+            m.put("successCount", result.getSuccessCount());
+            m.put("failureCount", result.getFailureCount());
+            m.put("errorMessages", new ArrayList<>(result.getErrorMessages()));
+        }
+        return m;
+    }
+}
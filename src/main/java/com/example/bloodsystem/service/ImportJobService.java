@@ -0,0 +1,443 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.config.VirtualThreads;
+import com.example.bloodsystem.entity.Donor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 导入流水线 (后台任务与同步导入共用)
+ * 每次导入是一条三段流水线，阶段之间用有界队列衔接 (队列满时上游阻塞，内存占用有上限)：
+ * 读取线程 (按换行对齐切成字符块) -> N 个解析线程 -> 写入线程 (按块序号顺序提交，每 BATCH_SIZE 行一个事务)
+ * 取消后读取线程停止读取，写入线程丢弃尚未提交的块；已提交的批次保留。
+ */
+@Slf4j
+@Service
+public class ImportJobService {
+
+    @Autowired private ImportService importService;
+
+    // 虚拟线程模式下流水线各阶段也用虚拟线程 (读取、写入阶段大部分时间阻塞在 I/O 和 JDBC 上)
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    // 每个任务的解析线程数，0 表示使用 CPU 核数
+    @Value("${import.parse-threads:0}")
+    private int parseThreads;
+
+    // 阶段间队列容量 (以块为单位，每块 BLOCK_CHARS 个字符)
+    @Value("${import.queue-capacity:8}")
+    private int queueCapacity;
+
+    // 保留的任务记录数，超过后丢弃最早结束的任务
+    @Value("${import.max-jobs-retained:50}")
+    private int maxJobsRetained;
+
+    // 读取块大小 (字符)，块尾对齐到最后一个换行，超长行会让块自动扩容
+    static final int BLOCK_CHARS = 256 * 1024;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    private final Deque<String> jobOrder = new ConcurrentLinkedDeque<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        if (virtualThreads) {
+            executor = VirtualThreads.newPerTaskExecutor("import-");
+            return;
+        }
+        AtomicInteger seq = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "import-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(ImportJob::cancel);
+        executor.shutdownNow();
+    }
+
+    /**
+     * 同步导入粘贴文本，导入完成后返回
+     */
+    public ImportResult importText(String text) {
+        return importNow(new ImportJob(newJobId(), "粘贴文本"), () -> new StringReader(text == null ? "" : text));
+    }
+
+    /**
+     * 同步流式导入 (请求体等)，内存占用与数据量无关
+     * @param listener 每批提交后回调进度，可为 null
+     */
+    public ImportResult importStream(InputStream in, Charset charset, ImportListener listener) {
+        ImportJob job = new ImportJob(newJobId(), "request-body");
+        job.listener = listener;
+        return importNow(job, () -> new InputStreamReader(in, charset));
+    }
+
+    /**
+     * 导入进度回调
+     */
+    public interface ImportListener {
+        /**
+         * @param result   截至目前的累计结果
+         * @param linesRead 已读取的行数
+         */
+        void onBatchCommitted(ImportResult result, int linesRead);
+    }
+
+    /**
+     * 提交粘贴文本的导入任务
+     */
+    public ImportJob submitText(String text) {
+        return submit("粘贴文本", () -> new StringReader(text == null ? "" : text), null);
+    }
+
+    /**
+     * 提交文件导入任务，任务结束后删除该文件 (调用方传入的是上传内容的临时副本)
+     */
+    public ImportJob submitFile(Path file, Charset charset, String sourceName) {
+        return submit(sourceName, () -> new InputStreamReader(Files.newInputStream(file), charset), () -> {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("删除导入临时文件失败: {}", file, e);
+            }
+        });
+    }
+
+    public ImportJob get(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    public boolean cancel(String jobId) {
+        ImportJob job = jobs.get(jobId);
+        if (job == null || job.isFinished()) return false;
+        job.cancel();
+        return true;
+    }
+
+    private interface ReaderSource {
+        Reader open() throws IOException;
+    }
+
+    private ImportJob submit(String sourceName, ReaderSource source, Runnable cleanup) {
+        ImportJob job = new ImportJob(newJobId(), sourceName);
+        jobs.put(job.getId(), job);
+        jobOrder.addLast(job.getId());
+        evictOldJobs();
+        try {
+            executor.execute(() -> {
+                try {
+                    run(job, source);
+                } finally {
+                    if (cleanup != null) cleanup.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 未能启动的任务不保留 (否则一直显示为运行中)，临时文件由调用方删除
+            jobs.remove(job.getId());
+            jobOrder.remove(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    // 在调用线程上执行读取阶段，等待写入线程结束后返回结果
+    private ImportResult importNow(ImportJob job, ReaderSource source) {
+        run(job, source);
+        boolean interrupted = false;
+        while (!job.isFinished()) {
+            try {
+                job.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                job.cancel();
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        return job.result;
+    }
+
+    private static String newJobId() {
+        return UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+    }
+
+    private void evictOldJobs() {
+        Iterator<String> it = jobOrder.iterator();
+        while (jobs.size() > maxJobsRetained && it.hasNext()) {
+            String id = it.next();
+            ImportJob job = jobs.get(id);
+            if (job == null || job.isFinished()) {
+                it.remove();
+                jobs.remove(id);
+            }
+        }
+    }
+
+    // --- 流水线 ---
+
+    // 读取阶段产出的字符块 buf[0, length)，以换行结尾 (最后一块除外)；firstLine 为块内第一行的行号 (从 1 开始)
+    private record Chunk(long seq, int firstLine, char[] buf, int length) {}
+
+    // 解析阶段产出的结果，errors 为已带行号的解析错误
+    private record Parsed(long seq, List<Donor> donors, List<String> errors) {}
+
+    private static final Chunk END_OF_INPUT = new Chunk(-1, 0, new char[0], 0);
+    private static final Parsed END_OF_PARSE = new Parsed(-1, List.of(), List.of());
+
+    private void run(ImportJob job, ReaderSource source) {
+        job.markStarted();
+        int workers = parseThreads > 0 ? parseThreads : Runtime.getRuntime().availableProcessors();
+        BlockingQueue<Chunk> parseQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Parsed> writeQueue = new ArrayBlockingQueue<>(queueCapacity);
+        // 在途块数上限 (已读出、尚未写完的块)：写入线程按序号提交，某个块解析慢时后续块在 pending 中等待，
+        // 仅靠队列容量限制不住 (其余解析线程会继续产出)，因此读取前先取许可，写入线程处理完一块归还
+        int maxInFlight = 2 * queueCapacity + workers;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        for (int i = 0; i < workers; i++) {
+            executor.execute(() -> parseStage(job, parseQueue, writeQueue));
+        }
+        executor.execute(() -> writeStage(job, writeQueue, workers, inFlight, maxInFlight));
+
+        try {
+            readStage(job, source, parseQueue, inFlight);
+        } catch (Exception e) {
+            log.error("导入任务 {} 读取失败", job.getId(), e);
+            job.markFailed("读取失败: " + e.getMessage());
+        } finally {
+            // 无论成功与否都要通知每个解析线程结束，否则写入线程永远等不到结束标记
+            for (int i = 0; i < workers; i++) putUninterruptibly(parseQueue, END_OF_INPUT);
+        }
+    }
+
+    private void readStage(ImportJob job, ReaderSource source, BlockingQueue<Chunk> out, Semaphore inFlight)
+            throws IOException, InterruptedException {
+        try (Reader reader = source.open()) {
+            char[] buf = new char[BLOCK_CHARS];
+            int len = 0;
+            int nextLine = 1;
+            long seq = 0;
+            boolean first = true;
+            boolean eof = false;
+            while (!eof && !job.isCancelRequested()) {
+                // 读满缓冲区或读到末尾
+                while (len < buf.length) {
+                    int n = reader.read(buf, len, buf.length - len);
+                    if (n < 0) {
+                        eof = true;
+                        break;
+                    }
+                    len += n;
+                }
+                if (first && len > 0) {
+                    first = false;
+                    // 去掉 UTF-8 BOM (Excel 另存为的 UTF-8 文件常带)
+                    if (buf[0] == '\uFEFF') System.arraycopy(buf, 1, buf, 0, --len);
+                }
+
+                int cut = eof ? len : lastNewline(buf, len) + 1;
+                if (cut == 0) {
+                    // 整块都没有换行：单行超长，扩容后继续读
+                    if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                    continue;
+                }
+
+                // 块内剩余的半行移到新缓冲区，当前缓冲区整体交给解析线程
+                char[] next = new char[Math.max(BLOCK_CHARS, len - cut)];
+                System.arraycopy(buf, cut, next, 0, len - cut);
+                // 取消或写入失败后写入线程不再归还许可，定期检查取消标记
+                while (!inFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    if (job.isCancelRequested()) return;
+                }
+                out.put(new Chunk(seq++, nextLine, buf, cut));
+                nextLine += countLines(buf, cut);
+                job.linesRead.set(nextLine - 1);
+                buf = next;
+                len -= cut;
+            }
+        }
+    }
+
+    private static int lastNewline(char[] buf, int len) {
+        for (int i = len - 1; i >= 0; i--) {
+            if (buf[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    // 块内行数：换行符个数，最后一块不以换行结尾时多算一行
+    private static int countLines(char[] buf, int len) {
+        int n = 0;
+        for (int i = 0; i < len; i++) {
+            if (buf[i] == '\n') n++;
+        }
+        return (len > 0 && buf[len - 1] != '\n') ? n + 1 : n;
+    }
+
+    private void parseStage(ImportJob job, BlockingQueue<Chunk> in, BlockingQueue<Parsed> out) {
+        try {
+            while (true) {
+                Chunk chunk = in.take();
+                if (chunk == END_OF_INPUT) break;
+                // 取消或出错后继续消费队列 (让读取线程退出)，但不再解析
+                if (job.isCancelRequested()) continue;
+                Parsed parsed;
+                try {
+                    parsed = parse(job, chunk);
+                } catch (RuntimeException e) {
+                    log.error("导入任务 {} 解析失败", job.getId(), e);
+                    job.markFailed("系统错误: " + e.getMessage());
+                    job.cancel();
+                    continue;
+                }
+                out.put(parsed);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.cancel();
+        } finally {
+            putUninterruptibly(out, END_OF_PARSE);
+        }
+    }
+
+    private Parsed parse(ImportJob job, Chunk chunk) {
+        char[] buf = chunk.buf();
+        int end = chunk.length();
+        List<Donor> donors = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        int lineNum = chunk.firstLine();
+        int pos = 0;
+        while (pos < end) {
+            int eol = pos;
+            while (eol < end && buf[eol] != '\n') eol++;
+            // 仅去除首尾空白 (含 \r)，保留行内 Tab 结构，规则同 String.trim
+            int from = pos, to = eol;
+            while (from < to && buf[from] <= ' ') from++;
+            while (to > from && buf[to - 1] <= ' ') to--;
+            if (to > from) {
+                String line = new String(buf, from, to - from);
+                if (!importService.isHeader(line)) {
+                    Donor donor = importService.parseLine(line);
+                    if (donor != null) {
+                        donor.setImportBatch(job.getId());
+                        donors.add(donor);
+                    } else {
+                        errors.add("第 " + lineNum + " 行格式错误或数据不足");
+                    }
+                }
+            }
+            lineNum++;
+            pos = eol + 1;
+        }
+        job.rowsParsed.addAndGet(donors.size());
+        job.rowsFailed.addAndGet(errors.size());
+        importService.recordFailedRows(errors.size());
+        return new Parsed(chunk.seq(), donors, errors);
+    }
+
+    private void writeStage(ImportJob job, BlockingQueue<Parsed> in, int workers, Semaphore inFlight, int maxInFlight) {
+        // 解析线程完成顺序不定，按块序号重新排队后再提交，保证与文件顺序一致
+        // pending 中的块都已取得在途许可，大小不超过 maxInFlight
+        PriorityQueue<Parsed> pending = new PriorityQueue<>(Comparator.comparingLong(Parsed::seq));
+        long nextSeq = 0;
+        int finishedWorkers = 0;
+        try {
+            while (finishedWorkers < workers) {
+                Parsed p = in.take();
+                if (p == END_OF_PARSE) {
+                    finishedWorkers++;
+                    continue;
+                }
+                pending.add(p);
+                assert pending.size() <= maxInFlight : "pending 超出在途块数上限";
+                while (!pending.isEmpty() && pending.peek().seq() == nextSeq) {
+                    Parsed next = pending.poll();
+                    nextSeq++;
+                    // 取消后继续消费队列 (让上游退出)，但不再写库
+                    if (!job.isCancelRequested()) write(job, next);
+                    inFlight.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            job.cancel();
+            drain(in, workers - finishedWorkers);
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("导入任务 {} 写入失败", job.getId(), e);
+            job.markFailed("系统错误: " + e.getMessage());
+            // 停止读取和解析，并继续取走结果直到所有解析线程结束，否则它们会阻塞在 put 上
+            job.cancel();
+            drain(in, workers - finishedWorkers);
+        } finally {
+            job.markFinished();
+            log.info("导入任务 {} 结束：{}，提交 {} 行，失败 {} 行", job.getId(), job.getStatus(),
+                    job.rowsCommitted.get(), job.rowsFailed.get());
+        }
+    }
+
+    private void write(ImportJob job, Parsed p) {
+        synchronized (job.result) {
+            p.errors().forEach(job.result::addError);
+        }
+        List<Donor> donors = p.donors();
+        for (int from = 0; from < donors.size() && !job.isCancelRequested(); from += ImportService.BATCH_SIZE) {
+            List<Donor> batch = donors.subList(from, Math.min(from + ImportService.BATCH_SIZE, donors.size()));
+            String saveError = null;
+            try {
+                importService.writeBatch(batch);
+                job.rowsCommitted.addAndGet(batch.size());
+            } catch (Exception e) {
+                saveError = "批量保存失败: " + e.getMessage();
+                job.rowsFailed.addAndGet(batch.size());
+                importService.recordFailedRows(batch.size());
+            }
+            synchronized (job.result) {
+                if (saveError != null) job.result.addError(saveError);
+                else job.result.addSuccess(batch.size());
+            }
+            if (job.listener != null) job.listener.onBatchCommitted(job.result, (int) job.linesRead.get());
+        }
+    }
+
+    // 取走队列中的结果直到收到 remainingWorkers 个结束标记 (不响应中断)
+    private static void drain(BlockingQueue<Parsed> in, int remainingWorkers) {
+        boolean interrupted = false;
+        while (remainingWorkers > 0) {
+            try {
+                if (in.take() == END_OF_PARSE) remainingWorkers--;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T item) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(item);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
@@ -2,76 +2,84 @@ package com.example.bloodsystem.service;
 
 import com.example.bloodsystem.entity.Donor;
 import com.example.bloodsystem.repository.DonorRepository;
+import com.example.bloodsystem.util.HlaLocus;
 import com.example.bloodsystem.util.HlaUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.support.TransactionTemplate;
-import java.io.*;
 import java.util.*;
 
 @Service
 public class ImportService {
     @Autowired private DonorRepository repository;
     @Autowired private TransactionTemplate transactionTemplate;
+    @Autowired private DonorBatchWriter batchWriter;
+    @Autowired private ApplicationEventPublisher eventPublisher;
+    @Autowired private MeterRegistry meterRegistry;
+    @Autowired private MatchMetrics matchMetrics;
 
-    // 批量保存的大小
-    private static final int BATCH_SIZE = 1000;
-
-    public ImportResult parseAndImportText(String textData) {
-        ImportResult result = new ImportResult();
-        if (textData == null || textData.trim().isEmpty()) return result;
+    // 写入方式：jpa (repository.saveAll) / jdbc-insert (JDBC 批量插入) / jdbc-upsert (已存在则覆盖)
+    @Value("${import.write-mode:jdbc-insert}")
+    private String writeMode;
 
-        List<Donor> batchList = new ArrayList<>(BATCH_SIZE);
-
-        try (BufferedReader reader = new BufferedReader(new StringReader(textData))) {
-            String line;
-            int lineNum = 0;
-            while ((line = reader.readLine()) != null) {
-                lineNum++;
-                // 仅去除首尾空白，保留行内 Tab 结构
-                line = line.trim();
+    // 批量保存的大小
+    static final int BATCH_SIZE = 1000;
+
+    // 监控指标：每批提交耗时分布、已提交/失败行数 (Prometheus 中用 rate() 得到每秒行数)、HLA 解析失败数
+    private Timer batchCommitTimer;
+    private Counter rowsCommitted, rowsFailed, hlaParseFailures;
+
+    @PostConstruct
+    public void initMetrics() {
+        batchCommitTimer = Timer.builder("bloodsystem.import.batch.commit")
+                .tag("mode", writeMode)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        rowsCommitted = meterRegistry.counter("bloodsystem.import.rows", "outcome", "committed");
+        rowsFailed = meterRegistry.counter("bloodsystem.import.rows", "outcome", "failed");
+        hlaParseFailures = matchMetrics.hlaParseFailures("import");
+    }
 
-                if (line.isEmpty() || isHeader(line)) continue;
+    void recordFailedRows(int n) {
+        if (n > 0) rowsFailed.increment(n);
+    }
 
-                Donor donor = parseLine(line);
-                if (donor != null) {
-                    batchList.add(donor);
-                } else {
-                    result.addError("第 " + lineNum + " 行格式错误或数据不足");
-                }
+    /**
+     * 在独立事务中写入一批供者，失败时抛出异常 (该批整体回滚)
+     */
+    void writeBatch(List<Donor> donors) {
+        batchCommitTimer.record(() -> doWriteBatch(donors));
+        rowsCommitted.increment(donors.size());
+    }
 
-                if (batchList.size() >= BATCH_SIZE) {
-                    saveBatch(batchList, result);
-                    batchList.clear();
+    private void doWriteBatch(List<Donor> donors) {
+        transactionTemplate.execute(status -> {
+            switch (writeMode) {
+                case "jpa" -> {
+                    repository.saveAll(donors);
+                    repository.flush();
                 }
+                case "jdbc-upsert" -> batchWriter.write(donors, DonorBatchWriter.Mode.UPSERT);
+                default -> batchWriter.write(donors, DonorBatchWriter.Mode.INSERT);
             }
-            if (!batchList.isEmpty()) saveBatch(batchList, result);
-        } catch (Exception e) {
-            e.printStackTrace();
-            result.addError("系统错误: " + e.getMessage());
-        }
-        return result;
-    }
-
-    private void saveBatch(List<Donor> donors, ImportResult result) {
-        if(donors.isEmpty()) return;
-        try {
-            transactionTemplate.execute(status -> {
-                repository.saveAll(donors);
-                repository.flush();
-                return null;
-            });
-            result.addSuccess(donors.size());
-        } catch (Exception e) {
-            result.addError("批量保存失败: " + e.getMessage());
-        }
+            // insert 模式下 ID 重复会使整批失败，提交成功即都是新增；其余模式可能覆盖已有供者
+            eventPublisher.publishEvent("jpa".equals(writeMode) || "jdbc-upsert".equals(writeMode)
+                    ? DonorChangeEvent.updated(donors) : DonorChangeEvent.inserted(donors));
+            return null;
+        });
     }
 
-    private boolean isHeader(String line) {
-        // 简单判断是否为标题行
-        return line.toUpperCase().startsWith("NO") ||
-                line.toUpperCase().contains("姓名") ||
-                (line.toUpperCase().contains("ID") && line.length() < 50);
+    boolean isHeader(String line) {
+        // 简单判断是否为标题行 (只在短行上做大写转换，数据行不产生额外字符串)
+        return line.regionMatches(true, 0, "NO", 0, 2) ||
+                line.contains("姓名") ||
+                (line.length() < 50 && line.toUpperCase().contains("ID"));
     }
 
     /**
@@ -93,13 +101,33 @@ public class ImportService {
 //        return v.toLowerCase();
     }
 
-    private Donor parseLine(String line) {
+    /**
+     * 按 Tab 拆分，保留空列和末尾空列，不经过正则
+     */
+    static String[] splitTabs(String line) {
+        int n = 1;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '\t') n++;
+        }
+        String[] parts = new String[n];
+        int from = 0, k = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '\t') {
+                parts[k++] = line.substring(from, i);
+                from = i + 1;
+            }
+        }
+        parts[k] = line.substring(from);
+        return parts;
+    }
+
+    Donor parseLine(String line) {
         try {
-            // 🔥 核心修复 1：使用 split("\t", -1) 防止空列导致的数据错位
+            // 🔥 核心修复 1：按单个 Tab 拆分并保留空列 (等价于 split("\t", -1))，防止空列导致的数据错位
             // Excel 复制出来的数据严格以 Tab 分隔。
             // 之前的 split("\\s+") 会把 "空ID" 的两个 Tab 合并，导致后续列前移。
-            // -1 参数确保 "a\t\tb" 被拆分为 ["a", "", "b"] 而不是 ["a", "b"]
-            String[] parts = line.split("\t", -1);
+            // "a\t\tb" 被拆分为 ["a", "", "b"] 而不是 ["a", "b"]
+            String[] parts = splitTabs(line);
 
             // 简单校验列数，至少要有姓名(0)和一部分基因数据，防止空行干扰
             // 这里的长度判断取决于你的 Excel 模板最少有多少列
@@ -128,15 +156,13 @@ public class ImportService {
             d.setHpa15(safeGet(parts, 9));
             d.setHpa21(safeGet(parts, 10));
 
-            // 索引 11-14: HLA (可能存在越界风险，safeGet 会处理)
-            d.setHlaA1(safeGet(parts, 11));
-            d.setHlaA2(safeGet(parts, 12));
-            d.setHlaB1(safeGet(parts, 13));
-            d.setHlaB2(safeGet(parts, 14));
+            // 索引 11-20: HLA A1, A2, B1, B2, C1, C2, DR1, DR2, DQ1, DQ2 (按 HlaLocus 序号；旧文件只有 A/B 四列，缺的列 safeGet 返回 null)
+            for (int a = 0; a < HlaLocus.ALLELES; a++) d.setHla(a, safeGet(parts, 11 + a));
 
             // 🔥 核心修复 2：确保解析 HLA 字符串并填充数字字段 (Group/Code)
             // 如果不调用这个，数据库里用于搜索的数字字段(hla_a1_group等)将是 null，导致配型搜不到人
-            HlaUtils.fillSplitFields(d);
+            int hlaFailures = HlaUtils.fillSplitFields(d);
+            if (hlaFailures > 0) hlaParseFailures.increment(hlaFailures);
 
             return d;
         } catch (Exception e) {
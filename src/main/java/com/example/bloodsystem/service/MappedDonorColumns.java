@@ -0,0 +1,319 @@
+package com.example.bloodsystem.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * 堆外列存储：数据放在内存映射文件中，由操作系统页缓存管理，不占堆、不产生 GC 压力，适合超过堆容量的供者库
+ * - records.dat：定长记录，按序号寻址，每条 72 字节 (本机字节序，按 8 字节对齐)
+ *   HLA Group x HLA_SLOTS (40) | HLA 等位基因 ID x HLA_SLOTS (20) | HPA 编码 (4) | version (4) | 血型编码 (1) | 有效标记 (1) | 保留 (2)
+ * - id-offsets.dat：序号 -> 供者 ID 在 ids.dat 中的位置 (8 字节)
+ * - ids.dat：供者 ID (2 字节长度 + UTF-8)，只追加；删除后的空间不回收，clear() 或重启时整体重置
+ * - id-hash-N.dat：供者 ID -> 序号的开放寻址哈希表 (线性探测)，每项 8 字节：ID 哈希值 << 32 | 序号 + 1，0 表示空
+ * 文件按段映射 (单个映射不能超过 2GB)，随序号增长追加新段。配型按序号顺序扫描 records.dat，
+ * 只有最终结果才读 ID。这些文件只是工作区，打开时清空，重启后的恢复仍依赖快照 (见 DonorIndexSnapshot)。
+ */
+final class MappedDonorColumns implements DonorColumns {
+
+    private static final int ALLELE_OFFSET = DonorIndex.HLA_SLOTS * 4;
+    private static final int HPA_OFFSET = ALLELE_OFFSET + DonorIndex.HLA_SLOTS * 2;
+    private static final int VERSION_OFFSET = HPA_OFFSET + 4;
+    private static final int BLOOD_TYPE_OFFSET = VERSION_OFFSET + 4;
+    private static final int LIVE_OFFSET = BLOOD_TYPE_OFFSET + 1;
+    private static final int RECORD_BYTES = (LIVE_OFFSET + 8) & ~7;
+
+    // 每段 2^20 个序号：records 72MB，id-offsets 8MB
+    private static final int ORD_SHIFT = 20;
+    private static final int ORD_MASK = (1 << ORD_SHIFT) - 1;
+    // ids.dat 每段 64MB，一个 ID 不跨段
+    private static final int ID_SEGMENT_SHIFT = 26;
+    private static final long ID_SEGMENT_MASK = (1L << ID_SEGMENT_SHIFT) - 1;
+    // 哈希表最多 2^27 项 (1GB)，装载因子不超过 2/3
+    private static final int MIN_HASH_SLOTS = 1 << 16;
+    private static final int MAX_HASH_SLOTS = 1 << 27;
+
+    private final Path dir;
+    private final Segments records;
+    private final Segments idOffsets;
+    private final Segments idBytes;
+    private long idEnd = 0;
+
+    private MappedByteBuffer hashTable;
+    private int hashMask;
+    private Path hashFile;
+    private int hashFileSeq = 0;
+
+    private int capacity = 0;
+    private int size = 0;
+    private int[] freeOrds = new int[16];
+    private int freeCount = 0;
+
+    MappedDonorColumns(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        deleteWorkFiles(dir);
+        records = new Segments(dir.resolve("records.dat"), RECORD_BYTES << ORD_SHIFT);
+        idOffsets = new Segments(dir.resolve("id-offsets.dat"), 8 << ORD_SHIFT);
+        idBytes = new Segments(dir.resolve("ids.dat"), 1 << ID_SEGMENT_SHIFT);
+        newHashTable(MIN_HASH_SLOTS, false);
+    }
+
+    @Override public int capacity() { return capacity; }
+    @Override public int size() { return size; }
+
+    // --- 记录 ---
+
+    private ByteBuffer rec(int ord) { return records.buffers[ord >>> ORD_SHIFT]; }
+
+    private static int pos(int ord) { return (ord & ORD_MASK) * RECORD_BYTES; }
+
+    @Override public boolean isLive(int ord) { return rec(ord).get(pos(ord) + LIVE_OFFSET) != 0; }
+    @Override public int bloodType(int ord) { return rec(ord).get(pos(ord) + BLOOD_TYPE_OFFSET) & 0xFF; }
+    @Override public int hlaGroup(int ord, int i) { return rec(ord).getInt(pos(ord) + i * 4); }
+    @Override public int hlaAllele(int ord, int i) { return rec(ord).getShort(pos(ord) + ALLELE_OFFSET + i * 2); }
+    @Override public int hpaCodes(int ord) { return rec(ord).getInt(pos(ord) + HPA_OFFSET); }
+    @Override public int version(int ord) { return rec(ord).getInt(pos(ord) + VERSION_OFFSET); }
+
+    @Override
+    public void set(int ord, int bloodCode, int[] hla, int[] alleles, int hpa, int version) {
+        ByteBuffer r = rec(ord);
+        int p = pos(ord);
+        for (int i = 0; i < DonorIndex.HLA_SLOTS; i++) r.putInt(p + i * 4, hla[i]);
+        for (int i = 0; i < DonorIndex.HLA_SLOTS; i++) r.putShort(p + ALLELE_OFFSET + i * 2, (short) alleles[i]);
+        r.putInt(p + HPA_OFFSET, hpa);
+        r.putInt(p + VERSION_OFFSET, version);
+        r.put(p + BLOOD_TYPE_OFFSET, (byte) bloodCode);
+    }
+
+    @Override
+    public int allocate(String donorId) {
+        byte[] bytes = donorId.getBytes(StandardCharsets.UTF_8);
+        if ((long) (size + 1) * 3 > (long) (hashMask + 1) * 2) newHashTable((hashMask + 1) * 2, true);
+        int ord = freeCount > 0 ? freeOrds[--freeCount] : capacity++;
+        ensureCapacity(capacity);
+        idOffsets.buffers[ord >>> ORD_SHIFT].putLong((ord & ORD_MASK) * 8, appendId(bytes));
+        rec(ord).put(pos(ord) + LIVE_OFFSET, (byte) 1);
+        hashInsert(((long) hash(bytes) << 32) | (ord + 1));
+        size++;
+        return ord;
+    }
+
+    @Override
+    public void release(int ord) {
+        hashRemove(ord);
+        rec(ord).put(pos(ord) + LIVE_OFFSET, (byte) 0);
+        if (freeCount == freeOrds.length) freeOrds = Arrays.copyOf(freeOrds, freeCount * 2);
+        freeOrds[freeCount++] = ord;
+        size--;
+    }
+
+    @Override
+    public void ensureCapacity(int n) {
+        int segments = (n + ORD_MASK) >>> ORD_SHIFT;
+        records.ensure(segments);
+        idOffsets.ensure(segments);
+    }
+
+    @Override
+    public void clear() {
+        capacity = 0;
+        size = 0;
+        freeCount = 0;
+        idEnd = 0;
+        newHashTable(MIN_HASH_SLOTS, false);
+    }
+
+    @Override
+    public void close() {
+        records.close();
+        idOffsets.close();
+        idBytes.close();
+        deleteWorkFiles(dir);
+    }
+
+    // --- 供者 ID ---
+
+    @Override
+    public String donorId(int ord) {
+        if (!isLive(ord)) return null;
+        long off = idOffset(ord);
+        ByteBuffer b = idBytes.buffers[(int) (off >>> ID_SEGMENT_SHIFT)];
+        int p = (int) (off & ID_SEGMENT_MASK);
+        byte[] bytes = new byte[Short.toUnsignedInt(b.getShort(p))];
+        b.get(p + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long idOffset(int ord) {
+        return idOffsets.buffers[ord >>> ORD_SHIFT].getLong((ord & ORD_MASK) * 8);
+    }
+
+    private long appendId(byte[] bytes) {
+        if (bytes.length > 0xFFFF) throw new IllegalArgumentException("供者 ID 过长");
+        int len = 2 + bytes.length;
+        // 剩余空间不够时从下一段开头写
+        if (((idEnd + len - 1) >>> ID_SEGMENT_SHIFT) != (idEnd >>> ID_SEGMENT_SHIFT)) {
+            idEnd = ((idEnd >>> ID_SEGMENT_SHIFT) + 1) << ID_SEGMENT_SHIFT;
+        }
+        long off = idEnd;
+        int segment = (int) (off >>> ID_SEGMENT_SHIFT);
+        idBytes.ensure(segment + 1);
+        ByteBuffer b = idBytes.buffers[segment];
+        int p = (int) (off & ID_SEGMENT_MASK);
+        b.putShort(p, (short) bytes.length);
+        b.put(p + 2, bytes);
+        idEnd = off + len;
+        return off;
+    }
+
+    private boolean idEquals(int ord, byte[] bytes) {
+        long off = idOffset(ord);
+        ByteBuffer b = idBytes.buffers[(int) (off >>> ID_SEGMENT_SHIFT)];
+        int p = (int) (off & ID_SEGMENT_MASK);
+        if (Short.toUnsignedInt(b.getShort(p)) != bytes.length) return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if (b.get(p + 2 + i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    // --- ID -> 序号哈希表 ---
+
+    @Override
+    public int find(String donorId) {
+        if (size == 0) return -1;
+        byte[] bytes = donorId.getBytes(StandardCharsets.UTF_8);
+        int h = hash(bytes);
+        for (int i = h & hashMask; ; i = (i + 1) & hashMask) {
+            long e = hashTable.getLong(i * 8);
+            if (e == 0) return -1;
+            if ((int) (e >>> 32) == h && idEquals((int) e - 1, bytes)) return (int) e - 1;
+        }
+    }
+
+    private void hashInsert(long entry) {
+        int i = (int) (entry >>> 32) & hashMask;
+        while (hashTable.getLong(i * 8) != 0) i = (i + 1) & hashMask;
+        hashTable.putLong(i * 8, entry);
+    }
+
+    // 删除后把同一探测链上后面的项前移 (不留墓碑)
+    private void hashRemove(int ord) {
+        long off = idOffset(ord);
+        ByteBuffer b = idBytes.buffers[(int) (off >>> ID_SEGMENT_SHIFT)];
+        int p = (int) (off & ID_SEGMENT_MASK);
+        byte[] bytes = new byte[Short.toUnsignedInt(b.getShort(p))];
+        b.get(p + 2, bytes);
+        int i = hash(bytes) & hashMask;
+        while ((int) hashTable.getLong(i * 8) != ord + 1) i = (i + 1) & hashMask;
+
+        for (int j = (i + 1) & hashMask; ; j = (j + 1) & hashMask) {
+            long e = hashTable.getLong(j * 8);
+            if (e == 0) break;
+            int home = (int) (e >>> 32) & hashMask;
+            // home 不在 (i, j] 之间时，这一项可以前移到 i
+            if (((j - home) & hashMask) >= ((j - i) & hashMask)) {
+                hashTable.putLong(i * 8, e);
+                i = j;
+            }
+        }
+        hashTable.putLong(i * 8, 0);
+    }
+
+    private void newHashTable(int slots, boolean rehash) {
+        if (slots > MAX_HASH_SLOTS) throw new IllegalStateException("供者数超过堆外索引上限");
+        MappedByteBuffer old = hashTable;
+        int oldSlots = hashMask + 1;
+        Path oldFile = hashFile;
+        hashFile = dir.resolve("id-hash-" + (hashFileSeq++) + ".dat");
+        try (FileChannel ch = FileChannel.open(hashFile, CREATE, READ, WRITE, TRUNCATE_EXISTING)) {
+            hashTable = map(ch, 0, slots * 8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建索引哈希表失败", e);
+        }
+        hashMask = slots - 1;
+        if (rehash && old != null) {
+            for (int i = 0; i < oldSlots; i++) {
+                long e = old.getLong(i * 8);
+                if (e != 0) hashInsert(e);
+            }
+        }
+        // 旧映射在 GC 回收前仍然有效，删除文件不影响 (删除失败留待下次打开时清理)
+        if (oldFile != null) deleteQuietly(oldFile);
+    }
+
+    private static int hash(byte[] bytes) {
+        int h = Arrays.hashCode(bytes);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    // --- 文件 ---
+
+    /**
+     * 同一个文件按固定段长映射为多段，段只增不减
+     */
+    private static final class Segments {
+        private final FileChannel channel;
+        private final int segmentBytes;
+        MappedByteBuffer[] buffers = new MappedByteBuffer[0];
+
+        Segments(Path file, int segmentBytes) throws IOException {
+            this.channel = FileChannel.open(file, CREATE, READ, WRITE, TRUNCATE_EXISTING);
+            this.segmentBytes = segmentBytes;
+        }
+
+        void ensure(int count) {
+            if (count <= buffers.length) return;
+            MappedByteBuffer[] grown = Arrays.copyOf(buffers, count);
+            for (int i = buffers.length; i < count; i++) grown[i] = map(channel, (long) i * segmentBytes, segmentBytes);
+            buffers = grown;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, int size) {
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+            buffer.order(ByteOrder.nativeOrder());
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException("映射索引文件失败", e);
+        }
+    }
+
+    private static void deleteWorkFiles(Path dir) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "{records,id-offsets,ids,id-hash-*}.dat")) {
+            for (Path f : files) deleteQuietly(f);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.service.DonorService.MatchResult;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+
+/**
+ * 配型结果缓存 (LRU + TTL)
+ * Key 为规范化后的患者查询 (血型、HLA Group 或等位基因 ID、HPA 基因型、排序去重后的抗体 Group、返回条数、评分规则版本)。
+ * 供者数据一旦变化 (保存/删除/清空/导入提交后) 立即整体失效：任意一条供者变化都可能改变任意查询的排名。
+ */
+@Component
+public class MatchCache {
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    @Value("${match.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${match.cache.max-entries:200}")
+    private int maxEntries;
+
+    @Value("${match.cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    // 结果条数超过该值不缓存 ("显示全部" 的大结果集)
+    @Value("${match.cache.max-result-size:5000}")
+    private int maxResultSize;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long generation = 0;
+    private long hits = 0, misses = 0, evictions = 0, invalidations = 0;
+
+    public record Key(String bloodType, List<Integer> hlaGroups, SortedMap<String, String> hpa,
+                      List<Integer> bannedGroups, int limit, int rulesVersion) {
+
+        static Key of(MatchPlan plan, int limit) {
+            String bt = plan.bloodType == null ? "" : plan.bloodType.trim().toUpperCase();
+            int[] keys = plan.hlaKeys();
+            List<Integer> hla = new ArrayList<>(keys.length);
+            for (int g : keys) hla.add(g);
+            SortedMap<String, String> hpa = new TreeMap<>();
+            for (String locus : plan.selectedHpas) hpa.put(locus, plan.pGts.get(locus));
+            List<Integer> banned = new ArrayList<>(plan.bannedGroups);
+            Collections.sort(banned);
+            return new Key(bt, hla, hpa, banned, limit, plan.rules.version());
+        }
+    }
+
+    private record Entry(List<MatchResult> results, long expiresAt) {}
+
+    // 命中/未命中/淘汰计数以 bloodsystem.match.cache.* 导出，与 stats() 同源
+    @PostConstruct
+    public void registerMetrics() {
+        FunctionCounter.builder("bloodsystem.match.cache.requests", this, c -> c.counter("hits"))
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("bloodsystem.match.cache.requests", this, c -> c.counter("misses"))
+                .tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("bloodsystem.match.cache.evictions", this, c -> c.counter("evictions"))
+                .register(meterRegistry);
+        FunctionCounter.builder("bloodsystem.match.cache.invalidations", this, c -> c.counter("invalidations"))
+                .register(meterRegistry);
+        Gauge.builder("bloodsystem.match.cache.size", this, c -> c.counter("size")).register(meterRegistry);
+    }
+
+    private synchronized double counter(String name) {
+        return switch (name) {
+            case "hits" -> hits;
+            case "misses" -> misses;
+            case "evictions" -> evictions;
+            case "invalidations" -> invalidations;
+            default -> entries.size();
+        };
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    public synchronized List<MatchResult> get(Key key) {
+        Entry e = entries.get(key);
+        if (e != null && e.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            evictions++;
+            e = null;
+        }
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.results;
+    }
+
+    /**
+     * 当前数据版本，计算结果前读取，写入缓存时校验
+     */
+    public synchronized long generation() { return generation; }
+
+    /**
+     * 计算期间供者数据发生过变化 (generation 不同) 的结果不缓存，避免缓存旧数据
+     */
+    public synchronized void put(Key key, List<MatchResult> results, long computedAtGeneration) {
+        if (!enabled || computedAtGeneration != generation || results.size() > maxResultSize) return;
+        entries.put(key, new Entry(Collections.unmodifiableList(results), System.currentTimeMillis() + ttlSeconds * 1000));
+        while (entries.size() > maxEntries) {
+            Iterator<Key> it = entries.keySet().iterator();
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * 供者数据变化 (任意类型) 的事务提交后清空缓存
+     * 在索引应用同一事件之后执行：先清空的话，清空后、索引更新前开始的配型会按旧数据算出结果并以新的 generation 写入缓存
+     */
+    @Order(2)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDonorChange(DonorChangeEvent event) {
+        invalidate();
+    }
+
+    public synchronized void invalidate() {
+        generation++;
+        if (!entries.isEmpty()) invalidations++;
+        entries.clear();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        m.put("size", entries.size());
+        m.put("maxEntries", maxEntries);
+        m.put("hits", hits);
+        m.put("misses", misses);
+        m.put("evictions", evictions);
+        m.put("invalidations", invalidations);
+        m.put("hitRate", (hits + misses) == 0 ? 0.0 : (double) hits / (hits + misses));
+        return m;
+    }
+}
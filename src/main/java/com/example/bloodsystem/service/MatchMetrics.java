@@ -0,0 +1,76 @@
+package com.example.bloodsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配型与列表搜索的监控指标 (Micrometer，经 /actuator/prometheus 导出)
+ * - bloodsystem.match.stage：各阶段耗时，stage = query (数据库加载候选) / rank (打分 + Top-K 或排序) /
+ *   hydrate (按 ID 回表) / detail (生成匹配详情)
+ * - bloodsystem.match.requests：每个患者查询走的路径，path = cache / index / scan，可算出缓存和索引命中率
+ * - bloodsystem.match.candidates / results：参与打分的供者数、返回条数
+ * - bloodsystem.donor.search：关键词搜索走的路径，path = index / sql
+ * - bloodsystem.hla.parse.failures：无法解析的 HLA 输入，source = patient / donor / import
+ */
+@Component
+public class MatchMetrics {
+
+    @Autowired private MeterRegistry registry;
+
+    private Timer queryTimer, rankTimer, hydrateTimer, detailTimer;
+    private Counter cachePath, indexPath, scanPath;
+    private Counter searchIndexPath, searchSqlPath;
+    private DistributionSummary candidates, results;
+
+    @PostConstruct
+    public void init() {
+        queryTimer = stageTimer("query");
+        rankTimer = stageTimer("rank");
+        hydrateTimer = stageTimer("hydrate");
+        detailTimer = stageTimer("detail");
+        cachePath = registry.counter("bloodsystem.match.requests", "path", "cache");
+        indexPath = registry.counter("bloodsystem.match.requests", "path", "index");
+        scanPath = registry.counter("bloodsystem.match.requests", "path", "scan");
+        searchIndexPath = registry.counter("bloodsystem.donor.search", "path", "index");
+        searchSqlPath = registry.counter("bloodsystem.donor.search", "path", "sql");
+        candidates = DistributionSummary.builder("bloodsystem.match.candidates")
+                .description("参与打分的供者数").register(registry);
+        results = DistributionSummary.builder("bloodsystem.match.results")
+                .description("每个患者返回的结果条数").register(registry);
+    }
+
+    private Timer stageTimer(String stage) {
+        return Timer.builder("bloodsystem.match.stage")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * HLA 解析失败计数 (按来源区分)
+     */
+    public Counter hlaParseFailures(String source) {
+        return registry.counter("bloodsystem.hla.parse.failures", "source", source);
+    }
+
+    // 各阶段耗时 (纳秒)，每次请求每个阶段记录一次
+    void query(long nanos) { queryTimer.record(nanos, TimeUnit.NANOSECONDS); }
+    void rank(long nanos) { rankTimer.record(nanos, TimeUnit.NANOSECONDS); }
+    void hydrate(long nanos) { hydrateTimer.record(nanos, TimeUnit.NANOSECONDS); }
+    void detail(long nanos) { detailTimer.record(nanos, TimeUnit.NANOSECONDS); }
+
+    void cacheHit() { cachePath.increment(); }
+    void indexPath(int count) { indexPath.increment(count); }
+    void scanPath(int count) { scanPath.increment(count); }
+    void search(boolean fromIndex) { (fromIndex ? searchIndexPath : searchSqlPath).increment(); }
+
+    void candidates(int n) { candidates.record(n); }
+    void results(int n) { results.record(n); }
+}
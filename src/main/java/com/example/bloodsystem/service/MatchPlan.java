@@ -0,0 +1,370 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.config.MatchConfig;
+import com.example.bloodsystem.config.ScoringRules;
+import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.util.HlaAlleleTable;
+import com.example.bloodsystem.util.HlaLocus;
+import com.example.bloodsystem.util.HlaUtils;
+import com.example.bloodsystem.util.HlaUtils.HlaInfo;
+
+import java.util.*;
+
+/**
+ * 编译后的配型查询计划 (每次请求编译一次，之后只读，可被多个打分线程共享)
+ * 患者输入在这里一次性解析成原始类型表：
+ * - 抗体排除的 HLA Group：位图 (超出位图范围的少量大值用有序数组二分查找)
+ * - HLA：每个位点一张 [供者 Group 或等位基因 ID] -> 标记 的小表 (与患者两条链的相容等级、是否命中抗体)，
+ *   一个位点两条链的标记拼成下标，查 pairPoints 直接得到该位点得分 (顺向、交叉配对已预先取优)。
+ *   Group 水平：Group 相同即匹配；等位基因水平：相容等级取自 HlaAlleleTable 的预计算表，两种模式逐供者的开销相同
+ * - 选中的 HPA 位点：位点序号数组
+ * - 患者 HPA 基因型：预先查好兼容矩阵，得到 [位点][供者编码] -> 得分 的小表
+ * 所有分值取自编译时的评分规则 (ScoringRules)，规则重新加载不影响已编译的计划。
+ * 逐个供者打分时不做字符串哈希，也不分配对象。
+ */
+public final class MatchPlan {
+
+    private static final int BANNED_BITS_LIMIT = 1 << 12;
+    private static final int HPA_CODES = DonorIndex.HPA_GENOTYPES.length;
+    private static final HlaLocus[] LOCI = HlaLocus.values();
+
+    // 供者一条链的标记 (5 bit)：与患者第 1 条链的相容等级 (bit 0-1)、与第 2 条链的相容等级 (bit 2-3)、
+    // 命中抗体 (bit 4，仅检查抗体的位点)。相容等级见 HlaAlleleTable，Group 水平下相同即为 SAME_ALLELE
+    private static final int LEVEL_MASK = 3, P2_SHIFT = 2, BANNED = 16, FLAG_BITS = 5;
+
+    // [(链 1 标记 << 5) | 链 2 标记] -> 位点得分：顺向 (P1-D1, P2-D2) 与交叉 (P1-D2, P2-D1) 取得分高者，
+    // 每条命中抗体的链扣 conflictPenalty
+    private static int[] pairPoints(ScoringRules rules) {
+        int[] table = new int[1 << (2 * FLAG_BITS)];
+        for (int f1 = 0; f1 < 1 << FLAG_BITS; f1++) {
+            for (int f2 = 0; f2 < 1 << FLAG_BITS; f2++) {
+                int straight = rules.levelPoints(f1 & LEVEL_MASK) + rules.levelPoints((f2 >> P2_SHIFT) & LEVEL_MASK);
+                int crossed = rules.levelPoints((f1 >> P2_SHIFT) & LEVEL_MASK) + rules.levelPoints(f2 & LEVEL_MASK);
+                int conflicts = ((f1 & BANNED) != 0 ? 1 : 0) + ((f2 & BANNED) != 0 ? 1 : 0);
+                table[(f1 << FLAG_BITS) | f2] = Math.max(straight, crossed) - conflicts * rules.conflictPenalty();
+            }
+        }
+        return table;
+    }
+
+    // --- 原始输入 (只在为最终结果生成详情时使用) ---
+    final String bloodType;
+    final Map<String, String> pGts;
+    final Set<String> selectedHpas;
+    final HlaInfo[] targets;        // 患者各等位基因 (按 HlaLocus 序号)，未输入或无法解析为 null
+    final int hlaParseFailures;     // 有输入但无法解析的患者 HLA 个数
+    final int patientAlleles;       // 患者已输入 (且能解析) 的等位基因数，等级按匹配条数占它的比例计算
+
+    // --- 编译结果 ---
+    final ScoringRules rules;
+    private final int[] pairPoints;
+    final boolean alleleLevel;      // true：等位基因水平 (Group + Specific)；false：Group 水平
+    final int[] pGroups;            // 患者各等位基因的 Group，-1 表示未输入
+    final int[] pAlleles;           // 患者各等位基因在 HlaAlleleTable 中的 ID (仅等位基因水平)，-1 表示未输入
+    private final HlaAlleleTable alleleTable;
+    final List<Integer> bannedGroups;  // 去重后的抗体排除 Group
+    private final long[] bannedBits;
+    private final int[] bannedOverflow;
+    // 标记表：位点 l 的供者取值 v (Group 或等位基因 ID) 对应 alleleFlags[flagsBase[l] + slot(v, flagsLast[l])]，
+    // 空值 (-1) 和其他负值落在第 0 项，超出表的取值落在最后一项 (标记为 0)；无法建表时为 null，走逐项比较
+    private final int[] flagsBase = new int[LOCI.length];
+    private final int[] flagsLast = new int[LOCI.length];
+    private final byte[] alleleFlags;
+    final int[] hpaLoci;            // 选中的 HPA 位点序号 (对应 matchConfig.getAllHpas())
+    private final String[] hpaNames;
+    private final int[] hpaPoints;  // [i * HPA_CODES + 供者编码] -> HPA 得分
+    // SQL 预筛选 (DonorService.loadCandidates) 各级在当前规则下是否与全表扫描的前 N 名一致：
+    // conflictTierExact 命中抗体的供者最高分严格低于未命中抗体的供者最低分；
+    // matchTierExact 另外要求 HLA Group 都不同的供者最高分严格低于至少一个 Group 相同的供者最低分
+    final boolean conflictTierExact, matchTierExact;
+
+    private MatchPlan(String bloodType, Map<String, String> pGts, String antibodyText, MatchConfig matchConfig, boolean alleleLevel) {
+        this.bloodType = bloodType;
+        this.pGts = pGts;
+        this.alleleLevel = alleleLevel;
+        this.alleleTable = alleleLevel ? HlaAlleleTable.get() : null;
+        this.rules = matchConfig.rules();
+        this.pairPoints = pairPoints(rules);
+
+        // 1. 患者 HPA
+        List<String> validHpas = matchConfig.getAllHpas();
+        Set<String> selected = new HashSet<>();
+        if (pGts != null) {
+            pGts.forEach((k, v) -> {
+                if (v != null && !v.isEmpty() && validHpas.contains(k)) selected.add(k);
+            });
+        }
+        this.selectedHpas = Collections.unmodifiableSet(selected);
+
+        this.hpaLoci = new int[selected.size()];
+        this.hpaNames = new String[selected.size()];
+        this.hpaPoints = new int[selected.size() * HPA_CODES];
+        int n = 0;
+        for (int i = 0; i < validHpas.size(); i++) {
+            String locus = validHpas.get(i);
+            if (!selected.contains(locus)) continue;
+            hpaLoci[n] = i;
+            hpaNames[n] = locus;
+            for (int code = 0; code < HPA_CODES; code++) {
+                hpaPoints[n * HPA_CODES + code] = rules.hpaPoints(i, matchConfig.getScore(pGts.get(locus), DonorIndex.HPA_GENOTYPES[code]));
+            }
+            n++;
+        }
+
+        // 2. 患者 HLA (Group；等位基因水平下另取等位基因 ID)
+        this.targets = new HlaInfo[HlaLocus.ALLELES];
+        this.pGroups = new int[HlaLocus.ALLELES];
+        this.pAlleles = new int[HlaLocus.ALLELES];
+        int failures = 0, entered = 0;
+        for (int a = 0; a < HlaLocus.ALLELES; a++) {
+            String raw = pGts.get(HlaLocus.key(a));
+            targets[a] = HlaUtils.parseHla(raw);
+            pGroups[a] = groupOf(targets[a]);
+            pAlleles[a] = (!alleleLevel || targets[a] == null) ? HlaAlleleTable.NO_ALLELE
+                    : alleleTable.id(HlaLocus.ofAllele(a), targets[a].group, targets[a].specific);
+            if (raw != null && !raw.trim().isEmpty() && targets[a] == null) failures++;
+            if (targets[a] != null) entered++;
+        }
+        this.hlaParseFailures = failures;
+        this.patientAlleles = entered;
+
+        // 3. 抗体 (得到被禁止的 Group 集合)
+        List<Integer> banned = HlaUtils.parseAntibodies(antibodyText).stream().distinct().toList();
+        this.bannedGroups = banned;
+        int maxSmall = -1;
+        List<Integer> overflow = new ArrayList<>();
+        for (int g : banned) {
+            if (g < BANNED_BITS_LIMIT) maxSmall = Math.max(maxSmall, g);
+            else overflow.add(g);
+        }
+        this.bannedBits = new long[(maxSmall >> 6) + 1];
+        for (int g : banned) {
+            if (g < BANNED_BITS_LIMIT) bannedBits[g >> 6] |= 1L << g;
+        }
+        this.bannedOverflow = overflow.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+
+        // 4. 每个位点的标记表
+        this.alleleFlags = alleleLevel ? alleleFlagsByAllele(overflow.isEmpty() ? maxSmall : Integer.MAX_VALUE)
+                : alleleFlagsByGroup(overflow.isEmpty() ? maxSmall : Integer.MAX_VALUE);
+
+        // 5. 预筛选各级是否精确 (供者未填的 HPA 位点得 0 分)
+        long hpaMin = 0, hpaMax = 0;
+        for (int i = 0; i < hpaLoci.length; i++) {
+            int lo = 0, hi = 0;
+            for (int code = 0; code < HPA_CODES; code++) {
+                lo = Math.min(lo, hpaPoints[i * HPA_CODES + code]);
+                hi = Math.max(hi, hpaPoints[i * HPA_CODES + code]);
+            }
+            hpaMin += lo;
+            hpaMax += hi;
+        }
+        int top = Math.max(rules.levelPoints(HlaAlleleTable.SAME_ALLELE), rules.levelPoints(HlaAlleleTable.SAME_GROUP));
+        boolean patientBanned = false;
+        for (int a = 0; a < HlaLocus.ALLELES; a++) {
+            if (HlaLocus.ofAllele(a).antibodyScreened() && isBanned(pGroups[a])) patientBanned = true;
+        }
+        // 命中抗体的那条链只有在患者本身带有该 Group 时才可能同时得分
+        long conflictedMax = (long) top * HlaLocus.ALLELES - (patientBanned ? 0 : top) + hpaMax - rules.conflictPenalty();
+        this.conflictTierExact = bannedGroups.isEmpty() || conflictedMax < hpaMin;
+        int minMatch = alleleLevel ? Math.min(rules.levelPoints(HlaAlleleTable.SAME_GROUP), rules.levelPoints(HlaAlleleTable.SAME_ALLELE))
+                : rules.levelPoints(HlaAlleleTable.SAME_ALLELE);
+        this.matchTierExact = conflictTierExact && hpaMin + minMatch > hpaMax;
+    }
+
+    // Group 水平：只需覆盖患者 Group 和抗体 Group，表外的 Group 标记都是 0
+    private byte[] alleleFlagsByGroup(int maxBanned) {
+        int maxGroup = maxBanned;
+        for (int g : pGroups) maxGroup = Math.max(maxGroup, g);
+        if (maxGroup >= BANNED_BITS_LIMIT) return null;
+        int stride = maxGroup + 3;
+        byte[] flags = new byte[LOCI.length * stride];
+        for (HlaLocus locus : LOCI) {
+            int l = locus.ordinal();
+            flagsBase[l] = l * stride;
+            flagsLast[l] = stride - 1;
+            int p1 = pGroups[locus.allele(0)], p2 = pGroups[locus.allele(1)];
+            if (p1 != DonorIndex.NO_GROUP) flags[flagsBase[l] + p1 + 1] |= HlaAlleleTable.SAME_ALLELE;
+            if (p2 != DonorIndex.NO_GROUP) flags[flagsBase[l] + p2 + 1] |= HlaAlleleTable.SAME_ALLELE << P2_SHIFT;
+            if (!locus.antibodyScreened()) continue;
+            for (int g : bannedGroups) flags[flagsBase[l] + g + 1] |= BANNED;
+        }
+        return flags;
+    }
+
+    // 等位基因水平：按等位基因 ID 覆盖整个位点 (表的大小由 HlaAlleleTable 决定)，每项的相容等级直接取预计算表；
+    // 抗体 Group 超出 ID 范围时 (供者无 ID 也可能命中) 不建表
+    private byte[] alleleFlagsByAllele(int maxBanned) {
+        if (maxBanned >= BANNED_BITS_LIMIT || (maxBanned >= 0 && alleleTable.id(LOCI[0], maxBanned, -1) == HlaAlleleTable.NO_ALLELE)) {
+            return null;
+        }
+        int total = 0;
+        for (HlaLocus locus : LOCI) {
+            flagsBase[locus.ordinal()] = total;
+            flagsLast[locus.ordinal()] = alleleTable.size(locus);
+            total += alleleTable.size(locus) + 1;
+        }
+        byte[] flags = new byte[total];
+        for (HlaLocus locus : LOCI) {
+            int l = locus.ordinal();
+            int p1 = pAlleles[locus.allele(0)], p2 = pAlleles[locus.allele(1)];
+            for (int id = 0; id < alleleTable.size(locus); id++) {
+                int f = alleleTable.level(locus, p1, id) | alleleTable.level(locus, p2, id) << P2_SHIFT;
+                if (locus.antibodyScreened() && isBanned(alleleTable.group(locus, id))) f |= BANNED;
+                flags[flagsBase[l] + id + 1] = (byte) f;
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * @param alleleLevel true 按等位基因水平 (Group + Specific) 配型，false 只比较 Group
+     */
+    public static MatchPlan compile(String bloodType, Map<String, String> pGts, String antibodyText, MatchConfig matchConfig,
+                                    boolean alleleLevel) {
+        return new MatchPlan(bloodType, pGts, antibodyText, matchConfig, alleleLevel);
+    }
+
+    /**
+     * 患者某一位点 (HlaLocus 序号) 已输入的 Group，去重
+     */
+    public List<Integer> patientGroups(int locus) {
+        List<Integer> groups = new ArrayList<>(2);
+        for (int i = locus * 2; i < locus * 2 + 2; i++) {
+            if (pGroups[i] != DonorIndex.NO_GROUP && !groups.contains(pGroups[i])) groups.add(pGroups[i]);
+        }
+        return groups;
+    }
+
+    /**
+     * 缓存键中的患者 HLA：Group 水平为各等位基因的 Group，等位基因水平为等位基因 ID
+     * (表中没有的 Specific 与只写 Group 等价，得到同一个键)
+     */
+    int[] hlaKeys() {
+        return alleleLevel ? pAlleles : pGroups;
+    }
+
+    public boolean isBanned(int group) {
+        if (group < 0) return false;
+        if (group < BANNED_BITS_LIMIT) {
+            int word = group >> 6;
+            return word < bannedBits.length && (bannedBits[word] & (1L << group)) != 0;
+        }
+        return Arrays.binarySearch(bannedOverflow, group) >= 0;
+    }
+
+    /**
+     * 患者某条链 (等位基因序号) 与供者一条链的相容等级 (HlaAlleleTable.MISMATCH / SAME_GROUP / SAME_ALLELE)
+     * @param dAllele 供者等位基因 ID，Group 水平下不使用
+     */
+    int level(int allele, int dGroup, int dAllele) {
+        if (alleleLevel) return alleleTable.level(LOCI[allele >> 1], pAlleles[allele], dAllele);
+        return pGroups[allele] != DonorIndex.NO_GROUP && pGroups[allele] == dGroup ? HlaAlleleTable.SAME_ALLELE : HlaAlleleTable.MISMATCH;
+    }
+
+    int levelPoints(int level) { return rules.levelPoints(level); }
+
+    /**
+     * 供者实体上某条链的等位基因 ID (Group 水平下为 NO_ALLELE)
+     */
+    int donorAllele(Donor d, int allele) {
+        return alleleLevel ? alleleTable.id(HlaLocus.ofAllele(allele), d.getHlaGroup(allele), d.getHlaCode(allele)) : HlaAlleleTable.NO_ALLELE;
+    }
+
+    /**
+     * 索引模式下的总分，规则同 DonorService.calculateScore，但不生成任何详情对象
+     */
+    public int score(DonorIndex index, int slot) {
+        int points = 0;
+        if (alleleFlags == null) {
+            for (int l = 0; l < LOCI.length; l++) {
+                points += locusPointsSlow(l, index.hlaGroup(slot, 2 * l), index.hlaGroup(slot, 2 * l + 1),
+                        index.hlaAllele(slot, 2 * l), index.hlaAllele(slot, 2 * l + 1));
+            }
+        } else if (alleleLevel) {
+            for (int l = 0; l < LOCI.length; l++) {
+                points += locusPoints(l, index.hlaAllele(slot, 2 * l), index.hlaAllele(slot, 2 * l + 1));
+            }
+        } else {
+            for (int l = 0; l < LOCI.length; l++) {
+                points += locusPoints(l, index.hlaGroup(slot, 2 * l), index.hlaGroup(slot, 2 * l + 1));
+            }
+        }
+        return points + hpaScore(index.hpaCodes(slot));
+    }
+
+    /**
+     * 已解码供者数据上的总分：groups / alleles 的 [off, off + HlaLocus.ALLELES) 为各等位基因的 Group 和等位基因 ID，
+     * packedHpa 为 DonorIndex 的 HPA 编码
+     */
+    public int score(int[] groups, int[] alleles, int off, int packedHpa) {
+        int points = 0;
+        for (int l = 0; l < LOCI.length; l++) {
+            int a = off + 2 * l;
+            points += hlaPoints(l, groups[a], groups[a + 1], alleles[a], alleles[a + 1]);
+        }
+        return points + hpaScore(packedHpa);
+    }
+
+    /**
+     * 数据库扫描模式下的总分 (供者为已加载的实体)
+     */
+    public int score(Donor d) {
+        int points = 0;
+        for (int l = 0; l < LOCI.length; l++) {
+            points += hlaPoints(l, groupOf(d.getHlaGroup(2 * l)), groupOf(d.getHlaGroup(2 * l + 1)),
+                    donorAllele(d, 2 * l), donorAllele(d, 2 * l + 1));
+        }
+
+        for (int i = 0; i < hpaLoci.length; i++) {
+            String dVal = d.getGenotype(hpaNames[i]);
+            if (dVal == null || dVal.isEmpty()) continue;
+            points += hpaPoints[i * HPA_CODES + DonorIndex.hpaCodeOf(dVal)];
+        }
+        return points;
+    }
+
+    private int hlaPoints(int locus, int g1, int g2, int a1, int a2) {
+        if (alleleFlags == null) return locusPointsSlow(locus, g1, g2, a1, a2);
+        return alleleLevel ? locusPoints(locus, a1, a2) : locusPoints(locus, g1, g2);
+    }
+
+    // 一个位点的 HLA 得分 (查表)，v1、v2 为供者两条链的 Group 或等位基因 ID
+    private int locusPoints(int locus, int v1, int v2) {
+        int base = flagsBase[locus], last = flagsLast[locus];
+        int f1 = alleleFlags[base + slot(v1, last)];
+        int f2 = alleleFlags[base + slot(v2, last)];
+        return pairPoints[(f1 << FLAG_BITS) | f2];
+    }
+
+    // 先比较再加一，Integer.MAX_VALUE 不会溢出成负数下标
+    private static int slot(int v, int last) {
+        return v >= last ? last : v < 0 ? 0 : v + 1;
+    }
+
+    // 不查表的逐项比较，规则与 pairPoints 相同
+    private int locusPointsSlow(int locus, int g1, int g2, int a1, int a2) {
+        int p1 = 2 * locus, p2 = p1 + 1;
+        int straight = levelPoints(level(p1, g1, a1)) + levelPoints(level(p2, g2, a2));
+        int crossed = levelPoints(level(p1, g2, a2)) + levelPoints(level(p2, g1, a1));
+        int points = Math.max(straight, crossed);
+        if (LOCI[locus].antibodyScreened()) points -= ((isBanned(g1) ? 1 : 0) + (isBanned(g2) ? 1 : 0)) * rules.conflictPenalty();
+        return points;
+    }
+
+    private int hpaScore(int packedHpa) {
+        int hpaScore = 0;
+        for (int i = 0; i < hpaLoci.length; i++) {
+            if (!DonorIndex.hpaPresent(packedHpa, hpaLoci[i])) continue;
+            hpaScore += hpaPoints[i * HPA_CODES + DonorIndex.hpaCode(packedHpa, hpaLoci[i])];
+        }
+        return hpaScore;
+    }
+
+    private static int groupOf(HlaInfo info) {
+        return info == null ? DonorIndex.NO_GROUP : info.group;
+    }
+
+    private static int groupOf(Integer group) {
+        return group == null ? DonorIndex.NO_GROUP : group;
+    }
+}
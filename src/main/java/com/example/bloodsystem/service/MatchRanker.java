@@ -0,0 +1,216 @@
+package com.example.bloodsystem.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * 候选打分与排名
+ * 候选数低于阈值时在调用线程顺序执行；超过阈值时按序号区间拆分到专用 ForkJoinPool，
+ * 每个分片维护自己的 Top-K (或有序结果)，最后两两归并。
+ * 排名规则：分数降序，同分按序号升序，与顺序执行的结果完全一致。
+ */
+@Slf4j
+@Component
+public class MatchRanker {
+
+    // 并行打分线程数，0 表示使用 CPU 核数
+    @Value("${match.parallelism:0}")
+    private int parallelism;
+
+    // 候选数达到该值才启用并行打分
+    @Value("${match.parallel-threshold:20000}")
+    private int parallelThreshold;
+
+    private static final int MIN_LEAF_SIZE = 4096;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void init() {
+        int n = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(n, p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("match-worker-" + t.getPoolIndex());
+            return t;
+        }, null, false);
+        log.info("配型打分线程池：{} 线程，并行阈值 {}", n, parallelThreshold);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * 对 [0, count) 中被 accept 的候选打分并排名
+     * accept / scorer 在并行模式下会被多个线程同时调用，必须只读
+     * @param limit > 0 时只保留前 limit 个；否则返回全部
+     * @return 按排名顺序排列的候选序号
+     */
+    public int[] rank(int count, IntPredicate accept, IntUnaryOperator scorer, int limit) {
+        boolean parallel = count >= parallelThreshold && pool.getParallelism() > 1;
+        int leafSize = Math.max(MIN_LEAF_SIZE, count / (pool.getParallelism() * 4));
+
+        if (limit > 0) {
+            TopK top = parallel
+                    ? pool.invoke(new TopKTask(0, count, leafSize, accept, scorer, limit))
+                    : topK(0, count, accept, scorer, limit);
+            return top.drainOrds();
+        }
+
+        long[] keys = parallel
+                ? pool.invoke(new SortTask(0, count, leafSize, accept, scorer))
+                : sortedKeys(0, count, accept, scorer);
+        int[] ords = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) ords[i] = (int) keys[i];
+        return ords;
+    }
+
+    /**
+     * 批量打分器：为一个候选一次性算出所有查询的分数
+     */
+    @FunctionalInterface
+    public interface BatchScorer {
+        /**
+         * @param out 长度为查询数，out[q] 写入第 q 个查询的分数，该查询不接受此候选时写入 REJECT
+         * @return false 表示该候选对所有查询都无效 (例如已删除的 slot)
+         */
+        boolean score(int ord, int[] out);
+    }
+
+    public static final int REJECT = Integer.MIN_VALUE;
+
+    /**
+     * 批量排名：对 [0, count) 只遍历一次，每个候选只调用一次 scorer，每个查询各自保留前 limit 个
+     * 排名规则与 rank 相同；scorer 在并行模式下会被多个线程同时调用，必须只读
+     * @return 每个查询按排名顺序排列的候选序号
+     */
+    public int[][] rankBatch(int count, int queries, BatchScorer scorer, int limit) {
+        boolean parallel = (long) count * queries >= parallelThreshold && pool.getParallelism() > 1;
+        int leafSize = Math.max(MIN_LEAF_SIZE, count / (pool.getParallelism() * 4));
+        TopK[] tops = parallel
+                ? pool.invoke(new BatchTopKTask(0, count, leafSize, queries, scorer, limit))
+                : topKBatch(0, count, queries, scorer, limit);
+        int[][] ords = new int[queries][];
+        for (int q = 0; q < queries; q++) ords[q] = tops[q].drainOrds();
+        return ords;
+    }
+
+    private static TopK topK(int from, int to, IntPredicate accept, IntUnaryOperator scorer, int limit) {
+        TopK top = new TopK(limit);
+        for (int i = from; i < to; i++) {
+            if (accept.test(i)) top.offer(scorer.applyAsInt(i), i);
+        }
+        return top;
+    }
+
+    private static TopK[] topKBatch(int from, int to, int queries, BatchScorer scorer, int limit) {
+        TopK[] tops = new TopK[queries];
+        for (int q = 0; q < queries; q++) tops[q] = new TopK(limit);
+        int[] scores = new int[queries];
+        for (int i = from; i < to; i++) {
+            if (!scorer.score(i, scores)) continue;
+            for (int q = 0; q < queries; q++) {
+                if (scores[q] != REJECT) tops[q].offer(scores[q], i);
+            }
+        }
+        return tops;
+    }
+
+    private static long[] sortedKeys(int from, int to, IntPredicate accept, IntUnaryOperator scorer) {
+        long[] keys = new long[to - from];
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            if (!accept.test(i)) continue;
+            // 高 32 位为负分数、低 32 位为序号：升序排序即分数降序，同分按序号顺序
+            keys[n++] = ((long) -scorer.applyAsInt(i) << 32) | i;
+        }
+        Arrays.sort(keys, 0, n);
+        return n == keys.length ? keys : Arrays.copyOf(keys, n);
+    }
+
+    private static long[] mergeSorted(long[] a, long[] b) {
+        long[] out = new long[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) out[k++] = (a[i] <= b[j]) ? a[i++] : b[j++];
+        while (i < a.length) out[k++] = a[i++];
+        while (j < b.length) out[k++] = b[j++];
+        return out;
+    }
+
+    private static class TopKTask extends RecursiveTask<TopK> {
+        private final int from, to, leafSize, limit;
+        private final IntPredicate accept;
+        private final IntUnaryOperator scorer;
+
+        TopKTask(int from, int to, int leafSize, IntPredicate accept, IntUnaryOperator scorer, int limit) {
+            this.from = from; this.to = to; this.leafSize = leafSize;
+            this.accept = accept; this.scorer = scorer; this.limit = limit;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= leafSize) return topK(from, to, accept, scorer, limit);
+            int mid = (from + to) >>> 1;
+            TopKTask left = new TopKTask(from, mid, leafSize, accept, scorer, limit);
+            left.fork();
+            TopK right = new TopKTask(mid, to, leafSize, accept, scorer, limit).compute();
+            TopK merged = left.join();
+            merged.merge(right);
+            return merged;
+        }
+    }
+
+    private static class BatchTopKTask extends RecursiveTask<TopK[]> {
+        private final int from, to, leafSize, queries, limit;
+        private final BatchScorer scorer;
+
+        BatchTopKTask(int from, int to, int leafSize, int queries, BatchScorer scorer, int limit) {
+            this.from = from; this.to = to; this.leafSize = leafSize;
+            this.queries = queries; this.scorer = scorer; this.limit = limit;
+        }
+
+        @Override
+        protected TopK[] compute() {
+            if (to - from <= leafSize) return topKBatch(from, to, queries, scorer, limit);
+            int mid = (from + to) >>> 1;
+            BatchTopKTask left = new BatchTopKTask(from, mid, leafSize, queries, scorer, limit);
+            left.fork();
+            TopK[] right = new BatchTopKTask(mid, to, leafSize, queries, scorer, limit).compute();
+            TopK[] merged = left.join();
+            for (int q = 0; q < queries; q++) merged[q].merge(right[q]);
+            return merged;
+        }
+    }
+
+    private static class SortTask extends RecursiveTask<long[]> {
+        private final int from, to, leafSize;
+        private final IntPredicate accept;
+        private final IntUnaryOperator scorer;
+
+        SortTask(int from, int to, int leafSize, IntPredicate accept, IntUnaryOperator scorer) {
+            this.from = from; this.to = to; this.leafSize = leafSize;
+            this.accept = accept; this.scorer = scorer;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= leafSize) return sortedKeys(from, to, accept, scorer);
+            int mid = (from + to) >>> 1;
+            SortTask left = new SortTask(from, mid, leafSize, accept, scorer);
+            left.fork();
+            long[] right = new SortTask(mid, to, leafSize, accept, scorer).compute();
+            return mergeSorted(left.join(), right);
+        }
+    }
+}
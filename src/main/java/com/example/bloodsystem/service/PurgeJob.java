@@ -0,0 +1,60 @@
+package com.example.bloodsystem.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 批量删除任务的状态与进度
+ */
+public class PurgeJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private final String id;
+    private final String description;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long startedAt, finishedAt;
+    private volatile Status status = Status.QUEUED;
+    private volatile String method;
+    private volatile String failure;
+
+    final AtomicLong deleted = new AtomicLong();
+    // TRUNCATE 时 deleted 为清空前统计的行数，与并发写入之间不是原子的，只是近似值
+    volatile boolean deletedApproximate;
+
+    PurgeJob(String id, String description) {
+        this.id = id;
+        this.description = description;
+    }
+
+    public String getId() { return id; }
+    public Status getStatus() { return status; }
+
+    void markStarted(String method) {
+        this.method = method;
+        startedAt = System.currentTimeMillis();
+        status = Status.RUNNING;
+    }
+
+    void markFinished(String failure) {
+        this.failure = failure;
+        finishedAt = System.currentTimeMillis();
+        status = failure == null ? Status.COMPLETED : Status.FAILED;
+    }
+
+    public Map<String, Object> snapshot() {
+        long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jobId", id);
+        m.put("description", description);
+        m.put("status", status);
+        m.put("method", method);
+        m.put("createdAt", createdAt);
+        m.put("elapsedMs", startedAt > 0 ? end - startedAt : 0);
+        m.put("deleted", deleted.get());
+        if (deletedApproximate) m.put("deletedApproximate", true);
+        if (failure != null) m.put("failure", failure);
+        return m;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.bloodsystem.service;
+
+/**
+ * 固定容量的 Top-K 选择器 (小顶堆，堆顶为当前第 K 名)
+ * 排名规则：分数降序，同分按 ord 升序 (即扫描顺序靠前者优先)。
+ * 只保存原始类型，offer 不产生任何对象。
+ */
+public class TopK {
+
+    private final int k;
+    private final int[] scores;
+    private final int[] ords;
+    private int size = 0;
+
+    public TopK(int k) {
+        if (k <= 0) throw new IllegalArgumentException("K 必须大于 0");
+        this.k = k;
+        this.scores = new int[k];
+        this.ords = new int[k];
+    }
+
+    public int size() { return size; }
+
+    /**
+     * 该分数是否还有机会进入 Top-K (用于提前跳过后续计算)
+     */
+    public boolean canEnter(int score) {
+        return size < k || score >= scores[0];
+    }
+
+    public void offer(int score, int ord) {
+        if (size < k) {
+            scores[size] = score;
+            ords[size] = ord;
+            siftUp(size++);
+        } else if (worse(scores[0], ords[0], score, ord)) {
+            scores[0] = score;
+            ords[0] = ord;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * 把另一个 Top-K 的元素并入当前堆 (用于合并并行分片的局部结果)
+     */
+    public void merge(TopK other) {
+        for (int i = 0; i < other.size; i++) offer(other.scores[i], other.ords[i]);
+    }
+
+    /**
+     * 按排名顺序 (最好的在前) 返回 ord，调用后堆被清空
+     */
+    public int[] drainOrds() {
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = ords[0];
+            scores[0] = scores[size - 1];
+            ords[0] = ords[size - 1];
+            size--;
+            siftDown(0);
+        }
+        return result;
+    }
+
+    // a 是否排在 b 之后
+    private static boolean worse(int scoreA, int ordA, int scoreB, int ordB) {
+        return scoreA < scoreB || (scoreA == scoreB && ordA > ordB);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(scores[i], ords[i], scores[parent], ords[parent])) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int l = 2 * i + 1, r = l + 1, worst = i;
+            if (l < size && worse(scores[l], ords[l], scores[worst], ords[worst])) worst = l;
+            if (r < size && worse(scores[r], ords[r], scores[worst], ords[worst])) worst = r;
+            if (worst == i) return;
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int s = scores[a]; scores[a] = scores[b]; scores[b] = s;
+        int o = ords[a]; ords[a] = ords[b]; ords[b] = o;
+    }
+}
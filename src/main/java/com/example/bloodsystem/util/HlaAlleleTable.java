@@ -0,0 +1,180 @@
+package com.example.bloodsystem.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * HLA 等位基因表 (等位基因水平配型使用)，启动后首次使用时从 classpath 的 hla/allele-table.tsv 加载一次
+ * 每个位点把等位基因编成连续的整数 ID：
+ * - 0 ~ 99：只有 Group 的“抗原水平”ID，即 Group 本身 (未写 Specific，或 Specific 不在表中)
+ * - 100 起：表中列出的等位基因，按文件顺序编号
+ * 并预先算好每个位点 [ID x ID] -> 相容等级 的稠密表，配型时只查表，不比较 Group / Specific。
+ * Group 不在 0 ~ 99 内的输入没有 ID (NO_ALLELE)，在等位基因水平下不参与匹配。
+ */
+public final class HlaAlleleTable {
+
+    public static final int NO_ALLELE = -1;
+
+    /** 相容等级：不匹配 / 仅 Group 相同 (抗原水平) / 等位基因相同或属于同一等价组 */
+    public static final int MISMATCH = 0, SAME_GROUP = 1, SAME_ALLELE = 2;
+
+    static final int GROUP_IDS = 100;
+    private static final String RESOURCE = "hla/allele-table.tsv";
+
+    private final long[][] keys;      // [位点] 表中等位基因 (Group << 32 | Specific)，已排序
+    private final int[][] keyIds;     // [位点] 与 keys 对应的 ID
+    private final int[] sizes;        // [位点] ID 总数
+    private final int[][] groups;     // [位点][ID] -> Group
+    private final byte[][] levels;    // [位点][x * size + y] -> 相容等级
+    private final int fingerprint;    // 表内容的 CRC32，快照据此判断 ID 是否仍然有效
+
+    private HlaAlleleTable(long[][] keys, int[][] keyIds, int[] sizes, int[][] groups, byte[][] levels,
+                           int fingerprint) {
+        this.keys = keys;
+        this.keyIds = keyIds;
+        this.sizes = sizes;
+        this.groups = groups;
+        this.levels = levels;
+        this.fingerprint = fingerprint;
+    }
+
+    public static HlaAlleleTable get() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        static final HlaAlleleTable INSTANCE = load();
+    }
+
+    /**
+     * @param specific -1 表示未指定
+     * @return 等位基因 ID；group 为负数或超出 0 ~ 99 时返回 NO_ALLELE
+     */
+    public int id(HlaLocus locus, int group, int specific) {
+        if (group < 0 || group >= GROUP_IDS) return NO_ALLELE;
+        if (specific < 0) return group;
+        int l = locus.ordinal();
+        int i = Arrays.binarySearch(keys[l], ((long) group << 32) | specific);
+        return i >= 0 ? keyIds[l][i] : group;
+    }
+
+    public int id(HlaLocus locus, Integer group, Integer specific) {
+        if (group == null) return NO_ALLELE;
+        return id(locus, group.intValue(), specific == null ? -1 : specific.intValue());
+    }
+
+    /** 某位点的 ID 总数 (ID 取值为 [0, size)) */
+    public int size(HlaLocus locus) { return sizes[locus.ordinal()]; }
+
+    /** 等位基因 ID 所属的 Group */
+    public int group(HlaLocus locus, int id) { return groups[locus.ordinal()][id]; }
+
+    /** 两个等位基因的相容等级，任一方为 NO_ALLELE 时为 MISMATCH */
+    public int level(HlaLocus locus, int x, int y) {
+        if (x < 0 || y < 0) return MISMATCH;
+        int l = locus.ordinal();
+        return levels[l][x * sizes[l] + y];
+    }
+
+    public int fingerprint() { return fingerprint; }
+
+    // --- 加载 ---
+
+    private static HlaAlleleTable load() {
+        try (InputStream in = HlaAlleleTable.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (in == null) throw new IllegalStateException("找不到 HLA 等位基因表: " + RESOURCE);
+            return parse(in.readAllBytes());
+        } catch (IOException e) {
+            throw new IllegalStateException("读取 HLA 等位基因表失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 每行：位点 (HlaLocus 名称)、等位基因 (Group:Specific)、等价组 (可省略，默认为等位基因自身)，Tab 或空格分隔；# 开头为注释
+     */
+    static HlaAlleleTable parse(byte[] content) throws IOException {
+        int loci = HlaLocus.values().length;
+        List<List<Long>> alleles = new ArrayList<>();
+        List<List<String>> classes = new ArrayList<>();
+        for (int l = 0; l < loci; l++) {
+            alleles.add(new ArrayList<>());
+            classes.add(new ArrayList<>());
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+");
+            HlaLocus locus;
+            try {
+                locus = HlaLocus.valueOf(parts[0].toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("HLA 等位基因表第 " + lineNo + " 行：未知位点 " + parts[0]);
+            }
+            long packed = parts.length < 2 ? HlaUtils.NO_HLA : HlaUtils.parseHlaPacked(parts[1], 0, parts[1].length());
+            if (packed == HlaUtils.NO_HLA || HlaUtils.packedSpecific(packed) < 0 || HlaUtils.packedGroup(packed) >= GROUP_IDS) {
+                throw new IllegalStateException("HLA 等位基因表第 " + lineNo + " 行：等位基因格式应为 Group:Specific (Group 0 ~ 99)");
+            }
+            List<Long> list = alleles.get(locus.ordinal());
+            if (list.contains(packed)) continue;
+            list.add(packed);
+            classes.get(locus.ordinal()).add(parts.length > 2 ? parts[2] : parts[1]);
+        }
+
+        long[][] keys = new long[loci][];
+        int[][] keyIds = new int[loci][];
+        int[] sizes = new int[loci];
+        int[][] groups = new int[loci][];
+        byte[][] levels = new byte[loci][];
+        for (int l = 0; l < loci; l++) {
+            List<Long> list = alleles.get(l);
+            int n = GROUP_IDS + list.size();
+            if (n > Short.MAX_VALUE) throw new IllegalStateException("HLA 等位基因表中位点 " + HlaLocus.values()[l] + " 的等位基因过多");
+            sizes[l] = n;
+
+            // ID -> Group、等价组 (抗原水平 ID 没有等价组)
+            int[] groupOf = new int[n];
+            String[] classOf = new String[n];
+            for (int g = 0; g < GROUP_IDS; g++) groupOf[g] = g;
+            for (int k = 0; k < list.size(); k++) {
+                groupOf[GROUP_IDS + k] = HlaUtils.packedGroup(list.get(k));
+                classOf[GROUP_IDS + k] = classes.get(l).get(k);
+            }
+
+            byte[] table = new byte[n * n];
+            for (int x = 0; x < n; x++) {
+                for (int y = 0; y < n; y++) {
+                    if (groupOf[x] != groupOf[y]) continue;
+                    boolean sameAllele = classOf[x] != null && classOf[x].equals(classOf[y]);
+                    table[x * n + y] = (byte) (sameAllele ? SAME_ALLELE : SAME_GROUP);
+                }
+            }
+            levels[l] = table;
+            groups[l] = groupOf;
+
+            Integer[] order = new Integer[list.size()];
+            for (int k = 0; k < order.length; k++) order[k] = k;
+            Arrays.sort(order, Comparator.comparingLong(list::get));
+            keys[l] = new long[order.length];
+            keyIds[l] = new int[order.length];
+            for (int k = 0; k < order.length; k++) {
+                keys[l][k] = list.get(order[k]);
+                keyIds[l][k] = GROUP_IDS + order[k];
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return new HlaAlleleTable(keys, keyIds, sizes, groups, levels, (int) crc.getValue());
+    }
+}
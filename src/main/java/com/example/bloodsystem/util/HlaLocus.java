@@ -0,0 +1,67 @@
+package com.example.bloodsystem.util;
+
+/**
+ * 参与配型的 HLA 位点。每个位点两条等位基因，按 "位点序号 * 2 + 链号 (0/1)" 编为等位基因序号，
+ * 实体字段、数据库列、索引列、导入文件列、患者参数都按这个顺序排列。
+ * 新增位点：在这里加一项，并在 Donor 中加对应的字段 (原始字符串、Group、Code)。
+ */
+public enum HlaLocus {
+    A("A", "HLA-A", true),
+    B("B", "HLA-B", true),
+    C("C", "HLA-C", false),
+    DRB1("DR", "HLA-DRB1", false),
+    DQB1("DQ", "HLA-DQB1", false);
+
+    /** 等位基因总数 (位点数 * 2) */
+    public static final int ALLELES = values().length * 2;
+
+    private static final HlaLocus[] BY_ALLELE = new HlaLocus[ALLELES];
+    private static final String[] KEYS = new String[ALLELES];
+    private static final String[] PARAMS = new String[ALLELES];
+    private static final String[] COLUMNS = new String[ALLELES];
+
+    static {
+        for (HlaLocus locus : values()) {
+            for (int copy = 0; copy < 2; copy++) {
+                int a = locus.allele(copy);
+                String suffix = locus.code + (copy + 1);
+                BY_ALLELE[a] = locus;
+                KEYS[a] = "HLA-" + suffix;
+                PARAMS[a] = "hla" + suffix.charAt(0) + suffix.substring(1).toLowerCase();
+                COLUMNS[a] = "hla_" + suffix.toLowerCase();
+            }
+        }
+    }
+
+    private final String code;
+    private final String label;
+    private final boolean antibodyScreened;
+
+    HlaLocus(String code, String label, boolean antibodyScreened) {
+        this.code = code;
+        this.label = label;
+        this.antibodyScreened = antibodyScreened;
+    }
+
+    /** 显示名：HLA-A、HLA-DRB1 */
+    public String label() { return label; }
+
+    /**
+     * 是否检查抗体排除。抗体输入只有 Group 没有位点，只对 A、B 位点生效
+     * (与原有规则一致，避免其他位点的同号 Group 被误判为冲突)
+     */
+    public boolean antibodyScreened() { return antibodyScreened; }
+
+    public int allele(int copy) { return ordinal() * 2 + copy; }
+
+    public static HlaLocus ofAllele(int allele) { return BY_ALLELE[allele]; }
+
+    /** 患者基因型 Map 的键、高亮标记：HLA-A1、HLA-DR2 */
+    public static String key(int allele) { return KEYS[allele]; }
+
+    /** 表单 / JSON 参数名、Donor 字段名：hlaA1、hlaDr2 */
+    public static String param(int allele) { return PARAMS[allele]; }
+
+    /** 原始字符串列名 hla_a1、hla_dr2；Group、Code 列在其后加 _group、_code */
+    public static String column(int allele) { return COLUMNS[allele]; }
+}
@@ -4,15 +4,16 @@ import com.example.bloodsystem.entity.Donor;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class HlaUtils {
 
     // 解析 HLA 格式: 允许 HLA-A*02:01, A*02, 02:01, 02 等格式
-    // 捕获组1: Group (第一段数字)
-    // 捕获组2: Specific (第二段数字，可选)
-    private static final Pattern HLA_PATTERN = Pattern.compile(".*?(\\d+)(?:[: ]*(\\d+))?.*");
+    // 第一段数字为 Group，其后 (可隔若干冒号/空格) 的第二段数字为 Specific (可选)
+    // 星号视为不存在，全角冒号等同半角冒号
+    // 带数字的位点名 (DRB1*15:01、HLA-DQB1*06:02) 先整体跳过，避免把位点名中的数字读成 Group
+
+    /** 解析失败时 parseHlaPacked 的返回值 */
+    public static final long NO_HLA = -1L;
 
     public static class HlaInfo {
         public int group;
@@ -25,24 +26,74 @@ public class HlaUtils {
     }
 
     public static HlaInfo parseHla(String raw) {
-        if (raw == null || raw.trim().isEmpty()) return null;
-        // 清理字符串：去除中文冒号、星号、无关字符
-        String cleaned = raw.trim().replace("：", ":").replace("*", "");
-        Matcher matcher = HLA_PATTERN.matcher(cleaned);
-        if (matcher.find()) {
-            try {
-                int g = Integer.parseInt(matcher.group(1));
-                int s = -1;
-                // 如果有第二段数字，则解析，否则为 -1
-                if (matcher.groupCount() >= 2 && matcher.group(2) != null && !matcher.group(2).isEmpty()) {
-                    s = Integer.parseInt(matcher.group(2));
+        if (raw == null) return null;
+        long packed = parseHlaPacked(raw, 0, raw.length());
+        return packed == NO_HLA ? null : new HlaInfo(packedGroup(packed), packedSpecific(packed));
+    }
+
+    /**
+     * 单遍扫描解析 [from, to) 区间内的 HLA，不使用正则、不分配对象
+     * @return 高 32 位为 Group、低 32 位为 Specific (-1 表示未指定)；无法解析返回 NO_HLA
+     */
+    public static long parseHlaPacked(CharSequence s, int from, int to) {
+        // 1. 第一段数字
+        int i = skipLocusName(s, from, to);
+        while (i < to && !isDigit(s.charAt(i))) i++;
+        if (i == to) return NO_HLA;
+        long group = 0;
+        while (i < to) {
+            char c = s.charAt(i);
+            if (isDigit(c)) {
+                group = group * 10 + (c - '0');
+                if (group > Integer.MAX_VALUE) return NO_HLA;
+            } else if (c != '*') {
+                break;
+            }
+            i++;
+        }
+
+        // 2. 跳过分隔的冒号/空格，若紧跟数字则为第二段
+        while (i < to && isGap(s.charAt(i))) i++;
+        long specific = -1;
+        if (i < to && isDigit(s.charAt(i))) {
+            specific = 0;
+            while (i < to) {
+                char c = s.charAt(i);
+                if (isDigit(c)) {
+                    specific = specific * 10 + (c - '0');
+                    if (specific > Integer.MAX_VALUE) return NO_HLA;
+                } else if (c != '*') {
+                    break;
                 }
-                return new HlaInfo(g, s);
-            } catch (NumberFormatException e) { return null; }
+                i++;
+            }
         }
-        return null;
+        return (group << 32) | (specific & 0xFFFFFFFFL);
+    }
+
+    // 形如 [HLA-]D 字母+ 数字+ * 的位点名 (DRB1、DQB1、DPB1 ...)：返回星号之后的位置，否则原样返回 from
+    private static int skipLocusName(CharSequence s, int from, int to) {
+        int i = from;
+        while (i < to && s.charAt(i) == ' ') i++;
+        if (i + 4 <= to && upper(s.charAt(i)) == 'H' && upper(s.charAt(i + 1)) == 'L'
+                && upper(s.charAt(i + 2)) == 'A' && s.charAt(i + 3) == '-') i += 4;
+        if (i >= to || upper(s.charAt(i)) != 'D') return from;
+        int j = i + 1;
+        while (j < to && isLetter(s.charAt(j))) j++;
+        int k = j;
+        while (k < to && isDigit(s.charAt(k))) k++;
+        if (j == i + 1 || k == j || k == to || s.charAt(k) != '*') return from;
+        return k + 1;
     }
 
+    public static int packedGroup(long packed) { return (int) (packed >>> 32); }
+    public static int packedSpecific(long packed) { return (int) packed; }
+
+    private static boolean isDigit(char c) { return c >= '0' && c <= '9'; }
+    private static boolean isLetter(char c) { return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'); }
+    private static char upper(char c) { return c >= 'a' && c <= 'z' ? (char) (c - 32) : c; }
+    private static boolean isGap(char c) { return c == ':' || c == '：' || c == ' ' || c == '*'; }
+
     /**
      * 解析抗体字符串，返回“禁止的 Group”列表
      * 输入格式：逗号、顿号、换行、空格分隔
@@ -50,20 +101,27 @@ public class HlaUtils {
     public static List<Integer> parseAntibodies(String rawInput) {
         if (rawInput == null || rawInput.trim().isEmpty()) return Collections.emptyList();
 
-        // 按分隔符拆分
-        String[] parts = rawInput.split("[,，\\s\\n]+");
         List<Integer> bannedGroups = new ArrayList<>();
-
-        for (String part : parts) {
-            HlaInfo info = parseHla(part);
-            if (info != null) {
+        int n = rawInput.length();
+        int i = 0;
+        while (i < n) {
+            // 按分隔符切出一段，直接在原字符串区间上解析
+            while (i < n && isSeparator(rawInput.charAt(i))) i++;
+            int start = i;
+            while (i < n && !isSeparator(rawInput.charAt(i))) i++;
+            if (i > start) {
+                long packed = parseHlaPacked(rawInput, start, i);
                 // 核心逻辑：只关注第一位数字 (Group)
-                bannedGroups.add(info.group);
+                if (packed != NO_HLA) bannedGroups.add(packedGroup(packed));
             }
         }
         return bannedGroups;
     }
 
+    private static boolean isSeparator(char c) {
+        return c == ',' || c == '，' || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
     /**
      * 判定是否冲突
      * 规则：只检查第一个数字 (Group)
@@ -97,23 +155,26 @@ public class HlaUtils {
         return 0.0;
     }
 
-    public static void fillSplitFields(Donor d) {
-        if (d == null) return;
-        fillOne(d, d.getHlaA1(), "A1");
-        fillOne(d, d.getHlaA2(), "A2");
-        fillOne(d, d.getHlaB1(), "B1");
-        fillOne(d, d.getHlaB2(), "B2");
+    /**
+     * 由 HLA 原始字符串填充 Group / Code 字段
+     * @return 有值但无法解析的 HLA 个数
+     */
+    public static int fillSplitFields(Donor d) {
+        if (d == null) return 0;
+        int failures = 0;
+        for (int a = 0; a < HlaLocus.ALLELES; a++) {
+            if (!fillOne(d, a)) failures++;
+        }
+        return failures;
     }
 
-    private static void fillOne(Donor d, String raw, String type) {
-        HlaInfo info = parseHla(raw);
-        Integer g = (info != null) ? info.group : null;
-        Integer c = (info != null) ? ((info.specific != -1) ? info.specific : null) : null;
-        switch (type) {
-            case "A1": d.setHlaA1Group(g); d.setHlaA1Code(c); break;
-            case "A2": d.setHlaA2Group(g); d.setHlaA2Code(c); break;
-            case "B1": d.setHlaB1Group(g); d.setHlaB1Code(c); break;
-            case "B2": d.setHlaB2Group(g); d.setHlaB2Code(c); break;
-        }
+    // 返回 false 表示原始字符串非空但解析失败
+    private static boolean fillOne(Donor d, int allele) {
+        String raw = d.getHla(allele);
+        long packed = (raw == null) ? NO_HLA : parseHlaPacked(raw, 0, raw.length());
+        Integer g = (packed != NO_HLA) ? packedGroup(packed) : null;
+        Integer c = (packed != NO_HLA && packedSpecific(packed) != -1) ? packedSpecific(packed) : null;
+        d.setHlaSplit(allele, g, c);
+        return raw == null || raw.isEmpty() || packed != NO_HLA;
     }
 }
\ No newline at end of file
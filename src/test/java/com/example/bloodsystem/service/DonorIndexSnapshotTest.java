@@ -0,0 +1,121 @@
+package com.example.bloodsystem.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DonorIndexSnapshot 的写入 / 读取往返 (含已释放的序号、长短不一的 ID、分段映射的段边界)，
+ * 以及 CRC 不一致、等位基因表指纹不一致时拒绝快照
+ */
+class DonorIndexSnapshotTest {
+
+    private static final List<String> BLOOD_TYPES = List.of("", "A", "B", "AB", "O");
+
+    @TempDir
+    Path dir;
+
+    private HeapDonorColumns cols;
+    // 期望读回的行 (按序号顺序，只含有效行)
+    private final List<Object[]> expected = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        cols = new HeapDonorColumns();
+        Random random = new Random(5);
+        List<Integer> ords = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            // ID 长度 1 ~ 300 字节 (含中文)，让字符串和定长列都有跨段的读取
+            String id = "D" + i + "供".repeat(random.nextInt(100));
+            int ord = cols.allocate(id);
+            int[] hla = new int[DonorIndex.HLA_SLOTS], alleles = new int[DonorIndex.HLA_SLOTS];
+            for (int s = 0; s < hla.length; s++) {
+                hla[s] = random.nextInt(5) == 0 ? DonorIndex.NO_GROUP : random.nextInt(100);
+                alleles[s] = (short) (random.nextInt(70000) - 2000);
+            }
+            cols.set(ord, random.nextInt(BLOOD_TYPES.size()), hla, alleles, random.nextInt(), random.nextInt(1000));
+            ords.add(ord);
+        }
+        for (int i = 0; i < ords.size(); i += 7) cols.release(ords.get(i));
+        for (int ord = 0; ord < cols.capacity(); ord++) {
+            if (!cols.isLive(ord)) continue;
+            int[] hla = new int[DonorIndex.HLA_SLOTS], alleles = new int[DonorIndex.HLA_SLOTS];
+            for (int s = 0; s < hla.length; s++) {
+                hla[s] = cols.hlaGroup(ord, s);
+                alleles[s] = cols.hlaAllele(ord, s);
+            }
+            expected.add(new Object[] { cols.donorId(ord), cols.bloodType(ord), hla, alleles, cols.hpaCodes(ord), cols.version(ord) });
+        }
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        Path file = dir.resolve("idx.snapshot");
+        DonorIndexSnapshot.write(file, 123L, BLOOD_TYPES, cols);
+        // 默认分段 (单段)、4KB 和 128 字节的小分段 (数值和 ID 会跨段边界，部分 ID 比一段还长)
+        assertRows(DonorIndexSnapshot.open(file));
+        assertRows(DonorIndexSnapshot.open(file, 12));
+        assertRows(DonorIndexSnapshot.open(file, 7));
+    }
+
+    @Test
+    void rejectsCrcMismatch() throws IOException {
+        Path file = dir.resolve("idx.snapshot");
+        DonorIndexSnapshot.write(file, 123L, BLOOD_TYPES, cols);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        IOException e = assertThrows(IOException.class, () -> DonorIndexSnapshot.open(file, 12));
+        assertTrue(e.getMessage().contains("CRC"), e.getMessage());
+    }
+
+    @Test
+    void rejectsAlleleTableFingerprintMismatch() throws IOException {
+        Path file = dir.resolve("idx.snapshot");
+        DonorIndexSnapshot.write(file, 123L, BLOOD_TYPES, cols);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        // 指纹在魔数、格式版本、HLA 槽数、HPA 位点数之后；改完重算 CRC，只让指纹检查失败
+        buf.putInt(16, buf.getInt(16) + 1);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        buf.putLong(bytes.length - 8, crc.getValue());
+        Files.write(file, bytes);
+        IOException e = assertThrows(IOException.class, () -> DonorIndexSnapshot.open(file));
+        assertTrue(e.getMessage().contains("等位基因表"), e.getMessage());
+    }
+
+    @Test
+    void rejectsTruncatedFile() throws IOException {
+        Path file = dir.resolve("idx.snapshot");
+        DonorIndexSnapshot.write(file, 123L, BLOOD_TYPES, cols);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 100));
+        assertThrows(IOException.class, () -> DonorIndexSnapshot.open(file, 12));
+    }
+
+    private void assertRows(DonorIndexSnapshot.Snapshot snap) {
+        assertEquals(BLOOD_TYPES, snap.bloodTypeNames());
+        assertEquals(expected.size(), snap.count());
+        int[] row = { 0 };
+        snap.forEach((id, bloodCode, hla, alleles, hpa, version) -> {
+            Object[] e = expected.get(row[0]++);
+            assertEquals(e[0], id);
+            assertEquals(e[1], bloodCode, id);
+            assertArrayEquals((int[]) e[2], hla, id);
+            assertArrayEquals((int[]) e[3], alleles, id);
+            assertEquals(e[4], hpa, id);
+            assertEquals(e[5], version, id);
+        });
+        assertEquals(expected.size(), row[0]);
+    }
+}
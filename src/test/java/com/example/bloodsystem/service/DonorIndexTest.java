@@ -0,0 +1,173 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.config.MatchConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * DonorIndex 的加载状态：快照恢复失败、加载期间同步失败 (索引停用) 之后，
+ * 清空后的追平和之后的完整加载仍按数据库内容恢复索引。数据库用内存中的 donors 表代替
+ */
+class DonorIndexTest {
+
+    // donor_id, blood_type, 各 Group, 各 Code, HPA, version
+    private static final int COLUMNS = 2 + 2 * DonorIndex.HLA_SLOTS + DonorIndex.HPA_LOCI + 1;
+
+    @TempDir
+    Path dir;
+
+    private final TreeMap<String, Object[]> table = new TreeMap<>();
+    // 每次查询前执行，模拟加载期间到达的变更事件
+    private Runnable onQuery = () -> {};
+    private DonorIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new DonorIndex();
+        ReflectionTestUtils.setField(index, "jdbcTemplate", new TableJdbcTemplate());
+        ReflectionTestUtils.setField(index, "matchConfig", new MatchConfig());
+        ReflectionTestUtils.setField(index, "enabled", true);
+        ReflectionTestUtils.setField(index, "snapshotPath", dir.resolve("idx.snapshot").toString());
+    }
+
+    @Test
+    void failedSnapshotRestoreReleasesLoadingState() throws IOException {
+        // 快照的血型字典超过 255 种，恢复到一半抛出异常
+        List<String> bloodTypes = new ArrayList<>(List.of(""));
+        for (int i = 0; i < 300; i++) bloodTypes.add("T" + i);
+        HeapDonorColumns cols = new HeapDonorColumns();
+        int[] hla = new int[DonorIndex.HLA_SLOTS];
+        Arrays.fill(hla, DonorIndex.NO_GROUP);
+        cols.set(cols.allocate("D1"), 1, hla, new int[DonorIndex.HLA_SLOTS], 0, 1);
+        DonorIndexSnapshot.write(dir.resolve("idx.snapshot"), 1L, bloodTypes, cols);
+
+        insert("D1", "A");
+        Boolean restored = ReflectionTestUtils.invokeMethod(index, "restoreFromSnapshot");
+        assertFalse(restored);
+        assertEquals(0, (int) ReflectionTestUtils.getField(index, "loaders"));
+        index.rebuild();
+        assertTrue(index.isReady());
+        assertEquals(Set.of("D1"), ids());
+
+        // 写过 D2 之后整表清空，D2 在追平前重新导入：追平要把它加回索引
+        insert("D2", "A");
+        index.onDonorChange(inserted(change("D2", "A")));
+        table.clear();
+        insert("D2", "B");
+        index.onDonorChange(DonorChangeEvent.reset());
+        assertTrue(index.isReady());
+        assertEquals(Set.of("D2"), ids());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedSyncDuringLoadKeepsIndexDisabled() {
+        // 血型字典已满 (255 种)，带新血型的变更事件在同步时抛出异常
+        List<String> names = (List<String>) ReflectionTestUtils.getField(index, "bloodTypeNames");
+        Map<String, Integer> codes = (Map<String, Integer>) ReflectionTestUtils.getField(index, "bloodTypeCodes");
+        for (int i = 0; i < 255; i++) {
+            codes.put(i == 0 ? "A" : "T" + i, names.size());
+            names.add(i == 0 ? "A" : "T" + i);
+        }
+        insert("D1", "A");
+        onQuery = () -> {
+            onQuery = () -> {};
+            index.onDonorChange(inserted(change("D2", "Z")));
+        };
+        index.rebuild();
+        assertFalse(index.isReady());
+        assertEquals(0, (int) ReflectionTestUtils.getField(index, "loaders"));
+
+        // 之后的完整加载重新启用索引
+        index.rebuild();
+        assertTrue(index.isReady());
+        assertEquals(Set.of("D1"), ids());
+    }
+
+    private Set<String> ids() {
+        return index.read(ix -> {
+            Set<String> ids = new HashSet<>();
+            for (int slot = 0; slot < ix.capacity(); slot++) {
+                if (ix.isLive(slot)) ids.add(ix.donorId(slot));
+            }
+            return ids;
+        });
+    }
+
+    private void insert(String id, String bloodType) {
+        Object[] row = new Object[COLUMNS];
+        row[0] = id;
+        row[1] = bloodType;
+        row[COLUMNS - 1] = 1;
+        table.put(id, row);
+    }
+
+    private static DonorChangeEvent inserted(DonorChangeEvent.DonorChange c) {
+        return new DonorChangeEvent(DonorChangeEvent.Type.INSERT, List.of(c), List.of(c.donorId()));
+    }
+
+    private static DonorChangeEvent.DonorChange change(String id, String bloodType) {
+        List<Integer> none = Collections.nCopies(DonorIndex.HLA_SLOTS, null);
+        return new DonorChangeEvent.DonorChange(id, 1, id, bloodType, none, none, Map.of());
+    }
+
+    /**
+     * 按 DonorIndex 使用的几种语句查询 table：全列 / (donor_id, version)，
+     * 按主键分段 (donor_id > ? ... LIMIT ?) 或 WHERE donor_id IN (...)
+     */
+    private class TableJdbcTemplate extends JdbcTemplate {
+
+        @Override
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            onQuery.run();
+            Collection<Object[]> rows;
+            if (sql.contains(" IN (")) {
+                rows = new ArrayList<>();
+                for (Object id : args) {
+                    if (table.containsKey((String) id)) rows.add(table.get((String) id));
+                }
+            } else {
+                rows = (sql.contains("donor_id > ?") ? table.tailMap((String) args[0], false) : table).values();
+                rows = rows.stream().limit((Integer) args[args.length - 1]).toList();
+            }
+            boolean versionOnly = sql.startsWith("SELECT donor_id, version ");
+            List<T> result = new ArrayList<>();
+            try {
+                for (Object[] row : rows) {
+                    result.add(rowMapper.mapRow(resultSet(versionOnly ? new Object[] { row[0], row[COLUMNS - 1] } : row), result.size()));
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            return result;
+        }
+
+        private ResultSet resultSet(Object[] row) {
+            boolean[] wasNull = { false };
+            return mock(ResultSet.class, invocation -> {
+                String method = invocation.getMethod().getName();
+                if (method.equals("wasNull")) return wasNull[0];
+                Object v = row[(Integer) invocation.getArgument(0) - 1];
+                wasNull[0] = v == null;
+                return switch (method) {
+                    case "getString" -> v;
+                    case "getInt" -> v == null ? 0 : v;
+                    default -> throw new UnsupportedOperationException(method);
+                };
+            });
+        }
+    }
+}
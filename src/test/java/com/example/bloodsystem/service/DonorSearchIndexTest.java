@@ -0,0 +1,150 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.Donor;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DonorSearchIndex 的 n-gram 候选 + 子串校验对照逐条 contains 的暴力实现
+ * 随机插入 / 更新 / 删除 (含触发整体压缩)，ID 大小写混合；逐页向后、向前翻完，比较每页内容和总数
+ */
+class DonorSearchIndexTest {
+
+    private static final String ID_CHARS = "abAB01_-";
+    private static final String NAME_CHARS = "张王李供者血小板abcAB1";
+    private static final int PAGE = 7;
+
+    private final DonorSearchIndex index = new DonorSearchIndex();
+    private final Map<String, String> oracle = new HashMap<>();
+    private final Random random = new Random(3);
+
+    @Test
+    void matchesBruteForce() {
+        for (int round = 0; round < 4; round++) {
+            List<Donor> batch = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                Donor d = donor(randomId(), text(NAME_CHARS, 1 + random.nextInt(5)));
+                oracle.put(d.getDonorId(), d.getName());
+                batch.add(d);
+            }
+            index.onDonorChange(DonorChangeEvent.inserted(batch));
+
+            List<Donor> updates = new ArrayList<>();
+            for (String id : sample(60)) updates.add(donor(id, random.nextInt(10) == 0 ? null : text(NAME_CHARS, 1 + random.nextInt(5))));
+            index.onDonorChange(DonorChangeEvent.updated(updates));
+            updates.forEach(d -> oracle.put(d.getDonorId(), d.getName()));
+
+            List<String> deletes = sample(80);
+            index.onDonorChange(DonorChangeEvent.deleted(deletes));
+            deletes.forEach(oracle::remove);
+
+            assertAllQueries();
+        }
+    }
+
+    @Test
+    void matchesBruteForceAfterCompaction() {
+        List<Donor> batch = new ArrayList<>();
+        for (int i = 0; i < 12000; i++) batch.add(donor(String.format("%s%05d", i % 2 == 0 ? "d" : "D", i), text(NAME_CHARS, 3)));
+        index.onDonorChange(DonorChangeEvent.inserted(batch));
+        batch.forEach(d -> oracle.put(d.getDonorId(), d.getName()));
+        // 作废文档超过 10000 且多于存活文档，触发压缩
+        List<String> deletes = new ArrayList<>(oracle.keySet()).subList(0, 11500);
+        index.onDonorChange(DonorChangeEvent.deleted(deletes));
+        new ArrayList<>(deletes).forEach(oracle::remove);
+        assertEquals(0, (int) ReflectionTestUtils.getField(index, "deadDocs"));
+        for (String kw : List.of("d", "D0", "d01", "1", "供", "张王", "zz")) assertPages(kw);
+    }
+
+    @Test
+    void idOrderFollowsCaseInsensitiveCollation() {
+        // 符号 < 数字 < 字母，字母不区分大小写，只差大小写时大写在前
+        List<String> ids = new ArrayList<>(List.of("b", "A", "a", "B", "_", "0", "ab", "Aa", "a0", "a_", "9z"));
+        ids.sort(DonorSearchIndex.ID_ORDER);
+        assertEquals(List.of("_", "0", "9z", "A", "a", "a_", "a0", "Aa", "ab", "B", "b"), ids);
+    }
+
+    private void assertAllQueries() {
+        Set<String> keywords = new TreeSet<>(List.of("a", "A", "_", "供", "张", "ab", "Ab", "b0", "供者", "a1_", "张王李", "血小板a", "不存在"));
+        List<String> ids = new ArrayList<>(oracle.keySet());
+        for (int i = 0; i < 30; i++) {
+            // 从现有 ID / 姓名中截取片段，保证有命中
+            String s = random.nextBoolean() ? ids.get(random.nextInt(ids.size())) : oracle.get(ids.get(random.nextInt(ids.size())));
+            if (s == null || s.isEmpty()) continue;
+            int from = random.nextInt(s.length());
+            keywords.add(s.substring(from, Math.min(s.length(), from + 1 + random.nextInt(4))));
+        }
+        for (String kw : keywords) assertPages(kw);
+    }
+
+    // 从第一页向后翻到底，再从最后一页向前翻回第一页
+    private void assertPages(String kw) {
+        List<String> expected = bruteForce(kw);
+        List<String> forward = new ArrayList<>();
+        String after = null;
+        while (true) {
+            DonorSearchIndex.Page page = index.search(kw, after, null, PAGE);
+            assertEquals(expected.size(), page.total(), "total kw=" + kw);
+            forward.addAll(page.ids());
+            if (page.ids().size() < PAGE) break;
+            after = page.ids().get(page.ids().size() - 1);
+        }
+        assertEquals(expected, forward, "forward kw=" + kw);
+
+        if (expected.isEmpty()) return;
+        List<String> backward = new ArrayList<>();
+        String before = expected.get(expected.size() - 1);
+        backward.add(before);
+        while (true) {
+            DonorSearchIndex.Page page = index.search(kw, null, before, PAGE);
+            // 向前翻页按 ID 升序 (离游标最近的在前)
+            for (String id : page.ids()) backward.add(0, id);
+            if (page.ids().size() < PAGE) break;
+            before = page.ids().get(page.ids().size() - 1);
+        }
+        assertEquals(expected, backward, "backward kw=" + kw);
+    }
+
+    // 参照实现：ID 或姓名包含关键词 (忽略大小写)，ID 按 ID_ORDER 降序
+    private List<String> bruteForce(String kw) {
+        String k = kw.toLowerCase(Locale.ROOT);
+        List<String> ids = new ArrayList<>();
+        oracle.forEach((id, name) -> {
+            if (id.toLowerCase(Locale.ROOT).contains(k) || (name != null && name.toLowerCase(Locale.ROOT).contains(k))) ids.add(id);
+        });
+        ids.sort(DonorSearchIndex.ID_ORDER.reversed());
+        return ids;
+    }
+
+    // 忽略大小写后不与现有 ID 重复 (MySQL _ci 排序规则下主键不区分大小写)
+    private String randomId() {
+        while (true) {
+            String id = text(ID_CHARS, 2 + random.nextInt(5));
+            boolean clash = oracle.keySet().stream().anyMatch(id::equalsIgnoreCase);
+            if (!clash) return id;
+        }
+    }
+
+    private List<String> sample(int n) {
+        List<String> ids = new ArrayList<>(oracle.keySet());
+        Collections.shuffle(ids, random);
+        return new ArrayList<>(ids.subList(0, Math.min(n, ids.size())));
+    }
+
+    private String text(String chars, int len) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < len; i++) sb.append(chars.charAt(random.nextInt(chars.length())));
+        return sb.toString();
+    }
+
+    private static Donor donor(String id, String name) {
+        Donor d = new Donor();
+        d.setDonorId(id);
+        d.setName(name);
+        return d;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.entity.Donor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ImportJobService 的读取 / 解析 / 写入流水线：跨块的行号、BOM、超过一块的长行、多解析线程下的提交顺序，
+ * 以及取消、解析失败、写入失败后流水线各线程都能退出 (任务结束，没有线程阻塞在队列或在途许可上)。
+ * ImportService 换成不写库的桩，按行内容决定解析结果
+ */
+class ImportJobServiceTest {
+
+    // 约 100 字符一行，几千行即跨过多个 BLOCK_CHARS 块
+    private static final String PAD = "\t" + "x".repeat(90);
+
+    private ImportJobService service;
+    private StubImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        service = new ImportJobService();
+        importService = new StubImportService();
+        ReflectionTestUtils.setField(service, "importService", importService);
+        ReflectionTestUtils.setField(service, "parseThreads", 4);
+        ReflectionTestUtils.setField(service, "queueCapacity", 2);
+        ReflectionTestUtils.setField(service, "maxJobsRetained", 50);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void lineNumbersAndOrderAcrossBlocks() {
+        List<String> lines = new ArrayList<>(List.of("NO\t姓名"));
+        List<String> expectedRows = new ArrayList<>();
+        List<String> expectedErrors = new ArrayList<>();
+        for (int i = 1; lines.size() < 12_000; i++) {
+            if (i % 150 == 0) {
+                lines.add("bad" + PAD);
+                expectedErrors.add("第 " + lines.size() + " 行格式错误或数据不足");
+            } else {
+                lines.add("D" + i + PAD);
+                expectedRows.add("D" + i + PAD);
+            }
+        }
+        String text = String.join("\n", lines) + "\n";
+        assertTrue(text.length() > 4 * ImportJobService.BLOCK_CHARS);
+
+        ImportResult result = service.importText(text);
+        assertEquals(expectedErrors, result.getErrorMessages());
+        assertEquals(expectedRows.size(), result.getSuccessCount());
+        // 4 个解析线程完成顺序不定，提交仍按文件顺序
+        assertEquals(expectedRows, importService.written);
+    }
+
+    @Test
+    void stripsLeadingBom() {
+        ImportResult result = service.importText("\uFEFFD1\r\nD2");
+        assertEquals(List.of("D1", "D2"), importService.written);
+        assertEquals(2, result.getSuccessCount());
+    }
+
+    @Test
+    void lineLongerThanOneBlock() {
+        String longLine = "D2" + "\t" + "y".repeat(2 * ImportJobService.BLOCK_CHARS + 7);
+        ImportResult result = service.importText("D1\n" + longLine + "\nbad\nD3\n");
+        assertEquals(List.of("D1", longLine, "D3"), importService.written);
+        assertEquals(List.of("第 3 行格式错误或数据不足"), result.getErrorMessages());
+    }
+
+    @Test
+    void cancelStopsEveryStage() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1), release = new CountDownLatch(1);
+        importService.beforeWrite = () -> {
+            writing.countDown();
+            awaitUninterruptibly(release);
+        };
+        ImportJob job = service.submitText(rows(40_000));
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        // 写入线程卡在第一批期间读取线程用完在途许可
+        Thread.sleep(300);
+        assertTrue(service.cancel(job.getId()));
+        release.countDown();
+
+        assertTrue(job.await(10, TimeUnit.SECONDS));
+        assertEquals(ImportJob.Status.CANCELLED, job.getStatus());
+        assertTrue(importService.written.size() < 40_000);
+        assertPipelineStopped();
+    }
+
+    @Test
+    void writerFailureDrainsPipeline() throws InterruptedException {
+        byte[] body = rows(40_000).getBytes(StandardCharsets.UTF_8);
+        // 进度回调失败 (如客户端断开) 时写入线程停止，之后的块不再提交
+        ImportResult result = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> service.importStream(
+                new ByteArrayInputStream(body), StandardCharsets.UTF_8, (r, linesRead) -> {
+                    throw new IllegalStateException("客户端已断开");
+                }));
+        assertEquals(ImportService.BATCH_SIZE, result.getSuccessCount());
+        assertEquals(ImportService.BATCH_SIZE, importService.written.size());
+        assertPipelineStopped();
+    }
+
+    @Test
+    void parseFailureDrainsPipeline() throws InterruptedException {
+        // 第一块解析失败：写入线程等不到序号 0，之后的块不提交也不归还在途许可，读取线程靠取消标记退出。
+        // 失败前先等读取线程用完在途许可 (2 * 队列容量 + 解析线程数 = 8 块，输入约 15 块)
+        importService.beforeFailure = () -> sleep(300);
+        ImportJob job = service.submitText("D0\nboom\n" + rows(40_000));
+        assertTrue(job.await(10, TimeUnit.SECONDS));
+        assertEquals(ImportJob.Status.FAILED, job.getStatus());
+        assertEquals(List.of(), importService.written);
+        assertPipelineStopped();
+    }
+
+    private static String rows(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) sb.append('D').append(i).append(PAD).append('\n');
+        return sb.toString();
+    }
+
+    // 关闭线程池并等待所有阶段的任务结束
+    private void assertPipelineStopped() throws InterruptedException {
+        ExecutorService executor = (ExecutorService) ReflectionTestUtils.getField(service, "executor");
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS), "流水线仍有线程未退出");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException ignored) {
+                // 继续等待
+            }
+        }
+    }
+
+    /**
+     * 不写库的 ImportService：以 NO 开头的行是标题行，以 bad 开头的行格式错误，boom 行抛出异常，
+     * 其余整行作为供者 ID；writeBatch 按提交顺序记录 ID
+     */
+    static class StubImportService extends ImportService {
+
+        final List<String> written = Collections.synchronizedList(new ArrayList<>());
+        volatile Runnable beforeWrite = () -> {};
+        volatile Runnable beforeFailure = () -> {};
+
+        @Override
+        boolean isHeader(String line) {
+            return line.startsWith("NO\t");
+        }
+
+        @Override
+        Donor parseLine(String line) {
+            if (line.startsWith("bad")) return null;
+            if (line.equals("boom")) {
+                beforeFailure.run();
+                throw new IllegalStateException("解析器异常");
+            }
+            Donor d = new Donor();
+            d.setDonorId(line);
+            return d;
+        }
+
+        @Override
+        void recordFailedRows(int n) {
+        }
+
+        @Override
+        void writeBatch(List<Donor> donors) {
+            beforeWrite.run();
+            donors.forEach(d -> written.add(d.getDonorId()));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.bloodsystem.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MappedDonorColumns 的 ID -> 序号哈希表 (线性探测、删除时后移、扩容重建) 与空闲序号复用，
+ * 随机 allocate / release / find 对照 HashMap，规模跨过哈希表扩容以及序号段 (2^20) 和 ID 段 (64MB) 的边界
+ */
+class MappedDonorColumnsTest {
+
+    // 约 70 字节的 ID，110 万个超过一个 ID 段
+    private static final String PAD = "donor-" + "x".repeat(56) + "-";
+
+    @TempDir
+    Path dir;
+
+    private MappedDonorColumns cols;
+    private final Map<String, Integer> oracle = new HashMap<>();
+    private final Set<Integer> freeOrds = new HashSet<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cols = new MappedDonorColumns(dir);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cols.close();
+    }
+
+    @Test
+    void randomOpsMatchHashMap() {
+        Random random = new Random(9);
+        List<String> live = new ArrayList<>();
+        List<String> released = new ArrayList<>();
+        int next = 0;
+        for (int op = 0; op < 400_000; op++) {
+            int r = random.nextInt(100);
+            if (r < 50 || live.isEmpty()) {
+                // 新 ID，或重新加入之前删除的 ID
+                String id = !released.isEmpty() && random.nextInt(4) == 0
+                        ? released.remove(random.nextInt(released.size())) : String.valueOf(next++);
+                allocate(id);
+                live.add(id);
+            } else if (r < 80) {
+                int i = random.nextInt(live.size());
+                String id = live.get(i);
+                live.set(i, live.get(live.size() - 1));
+                live.remove(live.size() - 1);
+                release(id);
+                released.add(id);
+            } else {
+                // 存在的、删除过的和从未出现的 ID
+                String id = switch (random.nextInt(3)) {
+                    case 0 -> live.get(random.nextInt(live.size()));
+                    case 1 -> released.isEmpty() ? "none" : released.get(random.nextInt(released.size()));
+                    default -> "none-" + random.nextInt(1000);
+                };
+                assertEquals(oracle.getOrDefault(id, -1).intValue(), cols.find(id), id);
+            }
+        }
+        // 存活数超过初始哈希表 (65536 项) 的 2/3，至少扩容过一次
+        assertTrue(oracle.size() > 65536 * 2 / 3, "size=" + oracle.size());
+        assertAll();
+    }
+
+    @Test
+    void crossesSegmentBoundaries() {
+        int n = (1 << 20) + 50_000;
+        for (int k = 0; k < n; k++) {
+            int ord = allocate(PAD + k);
+            cols.set(ord, k & 0xFF, hla(k), new int[DonorIndex.HLA_SLOTS], k * 31, k);
+        }
+        // 删除三分之一 (后移打乱探测链)，再分配新的 ID 复用空出的序号
+        for (int k = 0; k < n; k += 3) release(PAD + k);
+        for (int k = n; k < n + n / 3; k++) {
+            int ord = allocate(PAD + k);
+            cols.set(ord, k & 0xFF, hla(k), new int[DonorIndex.HLA_SLOTS], k * 31, k);
+        }
+        assertEquals(n, cols.capacity());
+        assertAll();
+        for (Map.Entry<String, Integer> e : oracle.entrySet()) {
+            int k = Integer.parseInt(e.getKey().substring(PAD.length()));
+            int ord = e.getValue();
+            assertEquals(k & 0xFF, cols.bloodType(ord));
+            assertEquals(hla(k)[DonorIndex.HLA_SLOTS - 1], cols.hlaGroup(ord, DonorIndex.HLA_SLOTS - 1));
+            assertEquals(k * 31, cols.hpaCodes(ord));
+            assertEquals(k, cols.version(ord));
+        }
+    }
+
+    private int allocate(String id) {
+        int capacity = cols.capacity();
+        int ord = cols.allocate(id);
+        // 有空闲序号时复用，否则追加在末尾
+        if (freeOrds.isEmpty()) assertEquals(capacity, ord);
+        else assertTrue(freeOrds.remove(ord), "未复用空闲序号: " + ord);
+        assertNull(oracle.put(id, ord));
+        return ord;
+    }
+
+    private void release(String id) {
+        int ord = oracle.remove(id);
+        assertEquals(ord, cols.find(id));
+        cols.release(ord);
+        freeOrds.add(ord);
+        assertEquals(-1, cols.find(id));
+    }
+
+    private void assertAll() {
+        assertEquals(oracle.size(), cols.size());
+        for (Map.Entry<String, Integer> e : oracle.entrySet()) {
+            assertEquals(e.getValue().intValue(), cols.find(e.getKey()), e.getKey());
+            assertEquals(e.getKey(), cols.donorId(e.getValue()));
+        }
+        for (int ord : freeOrds) {
+            assertFalse(cols.isLive(ord));
+            assertNull(cols.donorId(ord));
+        }
+    }
+
+    private static int[] hla(int k) {
+        int[] hla = new int[DonorIndex.HLA_SLOTS];
+        Arrays.fill(hla, k % 97);
+        hla[DonorIndex.HLA_SLOTS - 1] = k;
+        return hla;
+    }
+}
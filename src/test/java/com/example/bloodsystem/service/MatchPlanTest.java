@@ -0,0 +1,234 @@
+package com.example.bloodsystem.service;
+
+import com.example.bloodsystem.config.MatchConfig;
+import com.example.bloodsystem.config.ScoringRules;
+import com.example.bloodsystem.entity.Donor;
+import com.example.bloodsystem.util.HlaAlleleTable;
+import com.example.bloodsystem.util.HlaLocus;
+import com.example.bloodsystem.util.HlaUtils;
+import com.example.bloodsystem.util.HlaUtils.HlaInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MatchPlan 的查表打分与逐项比较 (locusPointsSlow)、DonorService.calculateScore 以及按定义直接计算的参照值的差分测试
+ * 随机患者 / 供者覆盖 Group 水平与等位基因水平、抗体排除 (含超出位图范围的 Group) 和自定义评分规则
+ */
+class MatchPlanTest {
+
+    private static final String[] HPA = { "aa", "ab", "bb" };
+    private static final String[] ANTIBODIES = { "", "A*02, B*07", "A*14", "B*120", "A*24 B*5000" };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void defaultRules() {
+        assertSameScores(new MatchConfig(), 1);
+    }
+
+    @Test
+    void customRules() throws IOException {
+        Path file = dir.resolve("scoring.properties");
+        Files.writeString(file, String.join("\n",
+                "hla.allele-points=80",
+                "hla.group-points=35",
+                "antibody.conflict-penalty=300",
+                "hpa.match-points=7",
+                "hpa.compatible-points=3",
+                "hpa.mismatch-points=1",
+                "hpa.weight.HPA-1=2.5",
+                "hpa.weight.HPA-15=0",
+                "hpa.critical-mismatch-penalty=20"));
+        MatchConfig mc = new MatchConfig();
+        ReflectionTestUtils.setField(mc, "scoringPath", file.toString());
+        assertTrue(mc.reload());
+        assertEquals(80, mc.rules().levelPoints(HlaAlleleTable.SAME_ALLELE));
+        assertSameScores(mc, 2);
+    }
+
+    @Test
+    void outOfRangeDonorGroups() {
+        MatchConfig mc = new MatchConfig();
+        Random r = new Random(3);
+        Map<String, String> pGts = new HashMap<>();
+        for (int a = 0; a < HlaLocus.ALLELES; a++) pGts.put(HlaLocus.key(a), prefix(HlaLocus.ofAllele(a)) + String.format("*%02d:01", 2 + a % 6));
+        MatchPlan plan = MatchPlan.compile(null, pGts, "A*02, B*07", mc, false);
+        MatchPlan slow = MatchPlan.compile(null, pGts, "A*02, B*07", mc, false);
+        ReflectionTestUtils.setField(slow, "alleleFlags", null);
+        assertNotNull(ReflectionTestUtils.getField(plan, "alleleFlags"));
+
+        // 查表的下标在 Integer.MAX_VALUE 时曾溢出为负数；-1 以外的负值也按空值处理
+        int[] values = { DonorIndex.NO_GROUP, -2, Integer.MIN_VALUE, 0, 2, 7, 5000, Integer.MAX_VALUE - 1, Integer.MAX_VALUE };
+        int[] alleles = new int[HlaLocus.ALLELES];
+        Arrays.fill(alleles, HlaAlleleTable.NO_ALLELE);
+        int packedHpa = DonorIndex.encodeHpa(new String[mc.getAllHpas().size()]);
+        for (int it = 0; it < 2000; it++) {
+            int[] groups = new int[HlaLocus.ALLELES];
+            for (int a = 0; a < groups.length; a++) {
+                groups[a] = r.nextInt(3) == 0 ? plan.pGroups[a] : values[r.nextInt(values.length)];
+            }
+            assertEquals(slow.score(groups, alleles, 0, packedHpa), plan.score(groups, alleles, 0, packedHpa),
+                    Arrays.toString(groups));
+        }
+    }
+
+    @Test
+    void gradeScalesWithEnteredAlleles() {
+        MatchConfig mc = new MatchConfig();
+        DonorService service = new DonorService();
+        ReflectionTestUtils.setField(service, "matchConfig", mc);
+        Donor d = new Donor();
+        Map<String, String> same = new HashMap<>(), ab = new HashMap<>(), cDrb1 = new HashMap<>(), noDqb1 = new HashMap<>();
+        for (int a = 0; a < HlaLocus.ALLELES; a++) {
+            HlaLocus locus = HlaLocus.ofAllele(a);
+            String hla = prefix(locus) + String.format("*%02d:01", 2 + a);
+            String other = prefix(locus) + "*50:01";
+            d.setHla(a, hla);
+            same.put(HlaLocus.key(a), hla);
+            if (locus == HlaLocus.A || locus == HlaLocus.B) ab.put(HlaLocus.key(a), hla);
+            cDrb1.put(HlaLocus.key(a), locus == HlaLocus.C || locus == HlaLocus.DRB1 ? hla : other);
+            noDqb1.put(HlaLocus.key(a), locus == HlaLocus.DQB1 ? other : hla);
+        }
+        HlaUtils.fillSplitFields(d);
+
+        // 阈值按 4 条链折算：只输入 A、B 时 4 条全中为 A；输入 10 条时 10 / 8 / 4 条分别为 A / B / C
+        assertEquals("A", service.calculateScore(d, MatchPlan.compile(null, ab, "", mc, false)).grade);
+        assertEquals("A", service.calculateScore(d, MatchPlan.compile(null, same, "", mc, false)).grade);
+        assertEquals("B", service.calculateScore(d, MatchPlan.compile(null, noDqb1, "", mc, false)).grade);
+        assertEquals("C", service.calculateScore(d, MatchPlan.compile(null, cDrb1, "", mc, false)).grade);
+        assertEquals("D", service.calculateScore(d, MatchPlan.compile(null, Map.of(), "", mc, false)).grade);
+    }
+
+    private void assertSameScores(MatchConfig mc, long seed) {
+        Random r = new Random(seed);
+        ScoringRules rules = mc.rules();
+        List<String> hpas = mc.getAllHpas();
+        DonorService service = new DonorService();
+        ReflectionTestUtils.setField(service, "matchConfig", mc);
+        HlaAlleleTable table = HlaAlleleTable.get();
+
+        for (int it = 0; it < 2000; it++) {
+            Map<String, String> pGts = new HashMap<>();
+            for (int a = 0; a < HlaLocus.ALLELES; a++) {
+                if (r.nextInt(6) > 0) pGts.put(HlaLocus.key(a), allele(r, HlaLocus.ofAllele(a)));
+            }
+            for (String h : hpas) if (r.nextInt(3) == 0) pGts.put(h, HPA[r.nextInt(3)]);
+            String antibodies = ANTIBODIES[r.nextInt(ANTIBODIES.length)];
+            boolean alleleLevel = r.nextBoolean();
+
+            MatchPlan plan = MatchPlan.compile(null, pGts, antibodies, mc, alleleLevel);
+            // 同一计划去掉标记表，走逐项比较
+            MatchPlan slow = MatchPlan.compile(null, pGts, antibodies, mc, alleleLevel);
+            ReflectionTestUtils.setField(slow, "alleleFlags", null);
+
+            for (int k = 0; k < 20; k++) {
+                Donor d = donor(r, hpas);
+                int[] groups = new int[HlaLocus.ALLELES], alleles = new int[HlaLocus.ALLELES];
+                String[] hpaValues = new String[hpas.size()];
+                for (int a = 0; a < HlaLocus.ALLELES; a++) {
+                    groups[a] = d.getHlaGroup(a) == null ? DonorIndex.NO_GROUP : d.getHlaGroup(a);
+                    alleles[a] = plan.donorAllele(d, a);
+                }
+                for (int i = 0; i < hpaValues.length; i++) hpaValues[i] = d.getGenotype(hpas.get(i));
+                int packedHpa = DonorIndex.encodeHpa(hpaValues);
+
+                int expected = reference(plan, rules, table, pGts, d, groups, alleleLevel)
+                        + hpaReference(mc, rules, pGts, d);
+                String msg = "患者 " + pGts + " 抗体 [" + antibodies + "] allele=" + alleleLevel + " 供者 " + describe(d);
+                assertEquals(expected, plan.score(d), msg);
+                assertEquals(expected, plan.score(groups, alleles, 0, packedHpa), msg);
+                assertEquals(expected, slow.score(d), msg);
+                assertEquals(expected, slow.score(groups, alleles, 0, packedHpa), msg);
+                assertEquals(expected, service.calculateScore(d, plan).score, 1e-9, msg);
+            }
+        }
+    }
+
+    // 按定义计算 HLA 部分：每个位点顺向 / 交叉取高者，A、B 位点每条命中抗体的链扣分
+    private static int reference(MatchPlan plan, ScoringRules rules, HlaAlleleTable table, Map<String, String> pGts,
+                                 Donor d, int[] dGroups, boolean alleleLevel) {
+        int total = 0;
+        for (HlaLocus locus : HlaLocus.values()) {
+            int[] pGroup = new int[2], pAllele = new int[2], dAllele = new int[2];
+            for (int c = 0; c < 2; c++) {
+                HlaInfo info = HlaUtils.parseHla(pGts.get(HlaLocus.key(locus.allele(c))));
+                pGroup[c] = info == null ? -1 : info.group;
+                pAllele[c] = info == null ? HlaAlleleTable.NO_ALLELE : table.id(locus, info.group, info.specific);
+                dAllele[c] = table.id(locus, d.getHlaGroup(locus.allele(c)), d.getHlaCode(locus.allele(c)));
+            }
+            int[][] points = new int[2][2];
+            for (int p = 0; p < 2; p++) {
+                for (int c = 0; c < 2; c++) {
+                    int level = alleleLevel
+                            ? table.level(locus, pAllele[p], dAllele[c])
+                            : pGroup[p] >= 0 && pGroup[p] == dGroups[locus.allele(c)] ? HlaAlleleTable.SAME_ALLELE : HlaAlleleTable.MISMATCH;
+                    points[p][c] = rules.levelPoints(level);
+                }
+            }
+            total += Math.max(points[0][0] + points[1][1], points[0][1] + points[1][0]);
+            if (locus.antibodyScreened()) {
+                for (int c = 0; c < 2; c++) {
+                    if (plan.isBanned(dGroups[locus.allele(c)])) total -= rules.conflictPenalty();
+                }
+            }
+        }
+        return total;
+    }
+
+    private static int hpaReference(MatchConfig mc, ScoringRules rules, Map<String, String> pGts, Donor d) {
+        int total = 0;
+        List<String> hpas = mc.getAllHpas();
+        for (int i = 0; i < hpas.size(); i++) {
+            String p = pGts.get(hpas.get(i)), v = d.getGenotype(hpas.get(i));
+            if (p != null && v != null && !v.isEmpty()) total += rules.hpaPoints(i, mc.getScore(p, v));
+        }
+        return total;
+    }
+
+    // 常见 Group 为主，夹杂表外 Group、超出抗体位图范围的 Group 和只有 Group 的写法
+    private static String allele(Random r, HlaLocus locus) {
+        int group = switch (r.nextInt(12)) {
+            case 0 -> 100 + r.nextInt(50);
+            case 1 -> 5000;
+            case 2, 3, 4, 5, 6 -> new int[] { 1, 2, 7, 14, 15, 24, 3, 6 }[r.nextInt(8)];
+            default -> r.nextInt(30);
+        };
+        String specific = r.nextInt(4) == 0 ? "" : String.format(":%02d", new int[] { 1, 2, 3, 6, 54, 99 }[r.nextInt(6)]);
+        return prefix(locus) + "*" + String.format("%02d", group) + specific;
+    }
+
+    private static String prefix(HlaLocus locus) {
+        return locus == HlaLocus.DRB1 ? "DRB1" : locus == HlaLocus.DQB1 ? "DQB1" : locus.name();
+    }
+
+    private static Donor donor(Random r, List<String> hpas) {
+        Donor d = new Donor();
+        for (int a = 0; a < HlaLocus.ALLELES; a++) {
+            if (r.nextInt(8) > 0) d.setHla(a, allele(r, HlaLocus.ofAllele(a)));
+        }
+        for (String h : hpas) {
+            if (r.nextInt(4) > 0) ReflectionTestUtils.setField(d, "hpa" + h.substring(4), HPA[r.nextInt(3)]);
+        }
+        HlaUtils.fillSplitFields(d);
+        return d;
+    }
+
+    private static String describe(Donor d) {
+        StringBuilder sb = new StringBuilder();
+        for (int a = 0; a < HlaLocus.ALLELES; a++) sb.append(d.getHla(a)).append(' ');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.bloodsystem.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TopK 与 MatchRanker (顺序 / 并行分片归并、批量排名) 对照完整排序的结果
+ * 分数取值范围很小，保证大量同分；limit 取在每个同分边界前后
+ */
+class MatchRankerTest {
+
+    private static final int COUNT = 30000;
+
+    private MatchRanker sequential;
+    private MatchRanker parallel;
+    private int[] scores;
+    private boolean[] live;
+
+    @BeforeEach
+    void setUp() {
+        sequential = ranker(1, Integer.MAX_VALUE);
+        // 阈值为 0、4 线程：必定拆成多个分片再归并
+        parallel = ranker(4, 0);
+        Random random = new Random(7);
+        scores = new int[COUNT];
+        live = new boolean[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            scores[i] = random.nextInt(20) - 5; // 含负分 (被抗体排除的供者)
+            live[i] = random.nextInt(10) != 0;
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        sequential.shutdown();
+        parallel.shutdown();
+    }
+
+    private static MatchRanker ranker(int parallelism, int threshold) {
+        MatchRanker r = new MatchRanker();
+        ReflectionTestUtils.setField(r, "parallelism", parallelism);
+        ReflectionTestUtils.setField(r, "parallelThreshold", threshold);
+        r.init();
+        return r;
+    }
+
+    // 参照实现：分数降序，同分按序号升序
+    private static int[] fullSort(int[] scores, boolean[] live) {
+        List<Integer> ords = new ArrayList<>();
+        for (int i = 0; i < scores.length; i++) if (live[i]) ords.add(i);
+        ords.sort(Comparator.<Integer>comparingInt(i -> -scores[i]).thenComparingInt(i -> i));
+        return ords.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // 每个同分段的边界 b 取 b-1、b、b+1，另加 1 和全部
+    private static TreeSet<Integer> limits(int[] sorted, int[] scores) {
+        TreeSet<Integer> limits = new TreeSet<>(List.of(1, sorted.length, sorted.length + 10));
+        for (int i = 1; i < sorted.length; i++) {
+            if (scores[sorted[i]] != scores[sorted[i - 1]]) {
+                limits.add(i - 1);
+                limits.add(i);
+                limits.add(i + 1);
+            }
+        }
+        limits.remove(0);
+        return limits;
+    }
+
+    @Test
+    void topKMatchesFullSortAtTieBoundaries() {
+        int n = 500;
+        int[] s = Arrays.copyOf(scores, n);
+        int[] expected = fullSort(s, fill(n));
+        for (int limit : limits(expected, s)) {
+            TopK top = new TopK(limit);
+            // 乱序插入，排名只取决于分数和序号
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < n; i++) order.add(i);
+            Collections.shuffle(order, new Random(limit));
+            for (int i : order) top.offer(s[i], i);
+            assertArrayEquals(Arrays.copyOf(expected, Math.min(limit, n)), top.drainOrds(), "limit=" + limit);
+        }
+    }
+
+    @Test
+    void topKMergeEqualsSingleHeap() {
+        int n = 2000;
+        int[] expected = fullSort(Arrays.copyOf(scores, n), fill(n));
+        for (int limit : new int[] { 1, 7, 100, 333, n }) {
+            TopK a = new TopK(limit), b = new TopK(limit), c = new TopK(limit);
+            for (int i = 0; i < n; i++) {
+                if (i % 3 == 0) a.offer(scores[i], i);
+                else if (i % 3 == 1) b.offer(scores[i], i);
+                else c.offer(scores[i], i);
+            }
+            c.merge(a);
+            c.merge(b);
+            assertArrayEquals(Arrays.copyOf(expected, limit), c.drainOrds(), "limit=" + limit);
+        }
+    }
+
+    @Test
+    void canEnterRespectsCurrentKth() {
+        TopK top = new TopK(2);
+        assertTrue(top.canEnter(Integer.MIN_VALUE + 1));
+        top.offer(5, 0);
+        top.offer(3, 1);
+        assertFalse(top.canEnter(2));
+        assertTrue(top.canEnter(3)); // 同分可能因序号更小而进入
+        top.offer(3, 2); // 同分但序号更大，不替换
+        assertArrayEquals(new int[] { 0, 1 }, top.drainOrds());
+    }
+
+    @Test
+    void rankMatchesFullSort() {
+        int[] expected = fullSort(scores, live);
+        assertArrayEquals(expected, sequential.rank(COUNT, i -> live[i], i -> scores[i], 0));
+        assertArrayEquals(expected, parallel.rank(COUNT, i -> live[i], i -> scores[i], 0));
+        for (int limit : limits(expected, scores)) {
+            int[] want = Arrays.copyOf(expected, Math.min(limit, expected.length));
+            assertArrayEquals(want, sequential.rank(COUNT, i -> live[i], i -> scores[i], limit), "sequential limit=" + limit);
+            assertArrayEquals(want, parallel.rank(COUNT, i -> live[i], i -> scores[i], limit), "parallel limit=" + limit);
+        }
+    }
+
+    @Test
+    void rankBatchMatchesPerQueryRank() {
+        int queries = 3;
+        int[][] qScores = new int[queries][COUNT];
+        Random random = new Random(11);
+        for (int q = 0; q < queries; q++) {
+            for (int i = 0; i < COUNT; i++) {
+                // 查询 2 拒绝部分候选
+                qScores[q][i] = q == 2 && random.nextInt(4) == 0 ? MatchRanker.REJECT : random.nextInt(10);
+            }
+        }
+        MatchRanker.BatchScorer scorer = (ord, out) -> {
+            if (!live[ord]) return false;
+            for (int q = 0; q < queries; q++) out[q] = qScores[q][ord];
+            return true;
+        };
+        for (int limit : new int[] { 1, 50, 2999, 3000, 3001, COUNT }) {
+            int[][] seq = sequential.rankBatch(COUNT, queries, scorer, limit);
+            int[][] par = parallel.rankBatch(COUNT, queries, scorer, limit);
+            for (int q = 0; q < queries; q++) {
+                int[] s = qScores[q];
+                boolean[] accepted = new boolean[COUNT];
+                for (int i = 0; i < COUNT; i++) accepted[i] = live[i] && s[i] != MatchRanker.REJECT;
+                int[] expected = fullSort(s, accepted);
+                int[] want = Arrays.copyOf(expected, Math.min(limit, expected.length));
+                assertArrayEquals(want, seq[q], "sequential q=" + q + " limit=" + limit);
+                assertArrayEquals(want, par[q], "parallel q=" + q + " limit=" + limit);
+            }
+        }
+    }
+
+    private static boolean[] fill(int n) {
+        boolean[] b = new boolean[n];
+        Arrays.fill(b, true);
+        return b;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.bloodsystem.util;
+
+import com.example.bloodsystem.util.HlaUtils.HlaInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 手写解析器与原正则实现的差分测试
+ */
+class HlaUtilsTest {
+
+    // --- 原正则实现 (作为参照) ---
+
+    private static final Pattern HLA_PATTERN = Pattern.compile(".*?(\\d+)(?:[: ]*(\\d+))?.*");
+
+    private static HlaInfo regexParseHla(String raw) {
+        if (raw == null || raw.trim().isEmpty()) return null;
+        String cleaned = raw.trim().replace("：", ":").replace("*", "");
+        Matcher matcher = HLA_PATTERN.matcher(cleaned);
+        if (matcher.find()) {
+            try {
+                int g = Integer.parseInt(matcher.group(1));
+                int s = -1;
+                if (matcher.groupCount() >= 2 && matcher.group(2) != null && !matcher.group(2).isEmpty()) {
+                    s = Integer.parseInt(matcher.group(2));
+                }
+                return new HlaInfo(g, s);
+            } catch (NumberFormatException e) { return null; }
+        }
+        return null;
+    }
+
+    private static List<Integer> regexParseAntibodies(String rawInput) {
+        if (rawInput == null || rawInput.trim().isEmpty()) return Collections.emptyList();
+        List<Integer> bannedGroups = new ArrayList<>();
+        for (String part : rawInput.split("[,，\\s\\n]+")) {
+            HlaInfo info = regexParseHla(part);
+            if (info != null) bannedGroups.add(info.group);
+        }
+        return bannedGroups;
+    }
+
+    private static void assertSameHla(String input) {
+        HlaInfo expected = regexParseHla(input);
+        HlaInfo actual = HlaUtils.parseHla(input);
+        String msg = "输入: [" + input + "]";
+        if (expected == null) {
+            assertNull(actual, msg);
+        } else {
+            assertNotNull(actual, msg);
+            assertEquals(expected.group, actual.group, msg);
+            assertEquals(expected.specific, actual.specific, msg);
+        }
+    }
+
+    @Test
+    void parseHlaSupportedFormats() {
+        String[] samples = {
+                "HLA-A*02:01", "A*02:01", "A*02", "02:01", "02", "A*11：01", "HLA-B*46：01",
+                "B*4601", "A02", "a*2:1", " 24 : 02 ", "02::01", "02 01", "02*01", "0*2:0*1", "*",
+                "A*", "HLA-", "", "   ", null, "abc", "02:xx", "02-01", "02\t01", "02\n01", "x\n03:04",
+                "2147483647", "2147483648", "1:2147483648", "000000000000000000007:0009", "A*02:01:01:02L",
+        };
+        for (String s : samples) assertSameHla(s);
+
+        HlaInfo info = HlaUtils.parseHla("HLA-A*02:01");
+        assertEquals(2, info.group);
+        assertEquals(1, info.specific);
+        assertEquals(-1, HlaUtils.parseHla("A*24").specific);
+    }
+
+    @Test
+    void parseHlaSkipsClassTwoLocusName() {
+        HlaInfo dr = HlaUtils.parseHla("DRB1*15:01");
+        assertEquals(15, dr.group);
+        assertEquals(1, dr.specific);
+        assertEquals(6, HlaUtils.parseHla("HLA-DQB1*06：02").group);
+        assertEquals(4, HlaUtils.parseHla(" drb1*04").group);
+        assertEquals(List.of(15, 6), HlaUtils.parseAntibodies("DRB1*15, DQB1*06"));
+        // 没有星号时仍按原规则取第一段数字
+        assertEquals(1, HlaUtils.parseHla("DRB1").group);
+    }
+
+    @Test
+    void parseHlaRandomInputs() {
+        char[] alphabet = { '0', '1', '2', '9', ':', '：', '*', ' ', 'A', 'B', 'H', 'L', '-', '\n', '\t', ',', '，', 'x', '\r' };
+        Random random = new Random(20240101);
+        for (int n = 0; n < 200_000; n++) {
+            StringBuilder sb = new StringBuilder();
+            int len = random.nextInt(14);
+            for (int i = 0; i < len; i++) sb.append(alphabet[random.nextInt(alphabet.length)]);
+            assertSameHla(sb.toString());
+        }
+    }
+
+    @Test
+    void parseHlaPackedRange() {
+        String s = "xxA*02:01yy";
+        long packed = HlaUtils.parseHlaPacked(s, 2, 9);
+        assertEquals(2, HlaUtils.packedGroup(packed));
+        assertEquals(1, HlaUtils.packedSpecific(packed));
+        assertEquals(HlaUtils.NO_HLA, HlaUtils.parseHlaPacked(s, 0, 2));
+    }
+
+    @Test
+    void parseAntibodiesMatchesRegex() {
+        String[] samples = {
+                "A*02, B*13", "A2，B51\nA24", " A*02:01  B*13 ", ",,A11,,", "\n\n", "HLA-A*02；B13",
+                "A*02:01, 24:02\tB*46", "A＊02", null, "",
+        };
+        for (String s : samples) assertEquals(regexParseAntibodies(s), HlaUtils.parseAntibodies(s), "输入: [" + s + "]");
+
+        char[] alphabet = { '0', '3', '7', ':', '*', ' ', ',', '，', '\n', '\t', 'A', 'B', '-', '：' };
+        Random random = new Random(7);
+        for (int n = 0; n < 100_000; n++) {
+            StringBuilder sb = new StringBuilder();
+            int len = random.nextInt(20);
+            for (int i = 0; i < len; i++) sb.append(alphabet[random.nextInt(alphabet.length)]);
+            String s = sb.toString();
+            assertEquals(regexParseAntibodies(s), HlaUtils.parseAntibodies(s), "输入: [" + s + "]");
+        }
+    }
+}